@@ -0,0 +1,34 @@
+package kangc.kkccdb.benchmark;
+
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * 运行所有基准测试，每个线程数跑一轮，结果写入target/jmh-result-t{线程数}.json
+ * <p>
+ * java -jar target/benchmarks.jar [JMH参数]
+ * 线程数用-Dthreads=1,2,4,8指定，默认1,4；其它参数（如 -f 1 -wi 2 CacheBenchmark）原样交给JMH
+ */
+public class BenchmarkMain {
+
+    public static void main(String[] args) throws Exception {
+        CommandLineOptions cmd = new CommandLineOptions(args);
+        for (String t : System.getProperty("threads", "1,4").split(",")) {
+            int threads = Integer.parseInt(t.trim());
+            OptionsBuilder builder = new OptionsBuilder();
+            builder.parent(cmd);
+            if (cmd.getIncludes().isEmpty()) {
+                builder.include(BenchmarkMain.class.getPackage().getName() + ".*");
+            }
+            Options opt = builder
+                    .threads(threads)
+                    .resultFormat(ResultFormatType.JSON)
+                    .result(System.getProperty("result.dir", "target") + "/jmh-result-t" + threads + ".json")
+                    .build();
+            new Runner(opt).run();
+        }
+    }
+}
@@ -0,0 +1,73 @@
+package kangc.kkccdb.benchmark;
+
+import kangc.kkccdb.backend.common.AbstractCacheLru;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * AbstractCacheLru.get：热点key命中，其余key全部未命中
+ * hitRatio是访问热点key的比例，热点key远少于缓存容量，始终留在缓存中
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class CacheBenchmark {
+
+    private static final int CAPACITY = 4096;
+    private static final int HOT_KEYS = 512;
+
+    @Param({"1.0", "0.9", "0.5"})
+    public double hitRatio;
+
+    private Cache cache;
+
+    /**
+     * 未命中时直接构造值，只测缓存本身的开销
+     */
+    static class Cache extends AbstractCacheLru<Long> {
+        Cache() {
+            super(CAPACITY);
+        }
+
+        @Override
+        protected Long getForCache(long key) {
+            return key;
+        }
+
+        @Override
+        protected void releaseForCache(Long obj) {
+        }
+    }
+
+    @Setup
+    public void setup() throws Exception {
+        cache = new Cache();
+        for (long key = 0; key < HOT_KEYS; key++) {
+            cache.get(key);
+        }
+    }
+
+    @Benchmark
+    public Long get() throws Exception {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        long key = random.nextDouble() < hitRatio
+                ? random.nextInt(HOT_KEYS)
+                : HOT_KEYS + (random.nextLong() >>> 1) % Integer.MAX_VALUE;
+        return cache.get(key);
+    }
+}
@@ -0,0 +1,94 @@
+package kangc.kkccdb.benchmark;
+
+import kangc.kkccdb.backend.manager.data.page.Page;
+import kangc.kkccdb.backend.manager.data.pageCache.PageCache;
+import kangc.kkccdb.backend.manager.data.pageCache.PageCacheImpl;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 普通模式和直接I/O模式随机读的吞吐，以及操作系统页缓存的增长
+ * 文件用直接I/O写入，开始时不在操作系统的页缓存中。cachePages为512时文件是缓存的8倍，
+ * 直接I/O每次未命中都要读盘，普通模式再次读同一页时命中操作系统的页缓存，代价是同一页在内存里有两份；
+ * cachePages为4096时直接I/O的缓存用上普通模式一共占用的内存。页缓存的增长在每组结束时打印
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class DirectIoBenchmark {
+
+    private static final int FILE_PAGES = 4096;
+
+    @Param({"false", "true"})
+    public boolean directIo;
+
+    @Param({"512", "4096"})
+    public int cachePages;
+
+    private String path;
+    private PageCache pc;
+    private long cachedBefore;
+
+    @Setup
+    public void setup() throws Exception {
+        path = System.getProperty("java.io.tmpdir") + "/kkccdb_direct_io_bench_" + System.nanoTime() + ".db";
+        PageCacheImpl writer = PageCache.create(path, (long) cachePages * PageCache.PAGE_SIZE, true);
+        byte[] init = new byte[PageCache.PAGE_SIZE];
+        for (int i = 0; i < FILE_PAGES; i++) {
+            writer.appendPage(init);
+        }
+        writer.force();
+        writer.close();
+        pc = PageCache.open(path, (long) cachePages * PageCache.PAGE_SIZE, directIo);
+        cachedBefore = osCachedKb();
+    }
+
+    @TearDown
+    public void tearDown() throws Exception {
+        System.out.printf("%n%s, cache %d MB: 操作系统页缓存增长 %d MB%n", directIo ? "直接I/O" : "普通读写",
+                (long) cachePages * PageCache.PAGE_SIZE >> 20, (osCachedKb() - cachedBefore) >> 10);
+        pc.close();
+        new File(path).delete();
+        new File(path + PageCache.HOT_SUFFIX).delete();
+    }
+
+    @Benchmark
+    public Page randomRead() throws Exception {
+        return pc.getPage(1 + ThreadLocalRandom.current().nextInt(FILE_PAGES));
+    }
+
+    /**
+     * /proc/meminfo中的Cached，单位KB，不是Linux时返回0
+     */
+    private static long osCachedKb() throws Exception {
+        File meminfo = new File("/proc/meminfo");
+        if (!meminfo.exists()) {
+            return 0;
+        }
+        for (String line : Files.readAllLines(Paths.get(meminfo.getPath()))) {
+            if (line.startsWith("Cached:")) {
+                return Long.parseLong(line.replaceAll("[^0-9]", ""));
+            }
+        }
+        return 0;
+    }
+}
@@ -0,0 +1,88 @@
+package kangc.kkccdb.benchmark;
+
+import kangc.kkccdb.backend.manager.transaction.LockManager;
+import kangc.kkccdb.workload.KeyGenerator;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * LockManager的锁竞争：每个事务对4个数据项加锁后释放，死锁时释放重试
+ * hot是Zipfian 0.99分布的1000个数据项，cold是均匀分布的100万个数据项；对比1段和1024段的锁表，
+ * 线程数由运行参数指定，死锁次数作为辅助计数器输出
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class LockManagerBenchmark {
+
+    @Param({"hot", "cold"})
+    public String distribution;
+
+    @Param({"1", "1024"})
+    public int stripes;
+
+    private LockManager lm;
+    private KeyGenerator keys;
+    private AtomicLong nextTrxId;
+
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class Counters {
+        public long deadlocks;
+
+        SplittableRandom random;
+        final long[] uids = new long[4];
+
+        @Setup(Level.Trial)
+        public void setup() {
+            random = new SplittableRandom(ThreadLocalRandom.current().nextLong());
+        }
+    }
+
+    @Setup
+    public void setup() {
+        lm = new LockManager(stripes);
+        keys = distribution.equals("hot") ? KeyGenerator.zipfian(1000, 0.99) : KeyGenerator.uniform(1_000_000);
+        nextTrxId = new AtomicLong(1);
+    }
+
+    @Benchmark
+    public void lockAndRelease(Counters c) {
+        long[] uids = c.uids;
+        for (int k = 0; k < uids.length; k++) {
+            uids[k] = keys.next(c.random) + 1;
+        }
+        while (true) {
+            long trxId = nextTrxId.getAndIncrement();
+            try {
+                for (long uid : uids) {
+                    lm.lock(trxId, uid);
+                }
+                lm.releaseAll(trxId);
+                return;
+            } catch (RuntimeException e) {
+                c.deadlocks++;
+                lm.releaseAll(trxId);
+            }
+        }
+    }
+}
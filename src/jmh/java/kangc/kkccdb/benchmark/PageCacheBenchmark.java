@@ -0,0 +1,86 @@
+package kangc.kkccdb.benchmark;
+
+import kangc.kkccdb.backend.manager.data.page.Page;
+import kangc.kkccdb.backend.manager.data.pageCache.PageCache;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * PageCacheImpl的getPage、flushPage、newPage
+ * workingSet是getPage随机访问的页数，缓存能放下CACHE_PAGES页：小于它时全部命中，大于它时大部分未命中
+ * directIo为true时用O_DIRECT读写，未命中的页面不会命中操作系统的页缓存
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class PageCacheBenchmark {
+
+    private static final int CACHE_PAGES = 256;
+    private static final int FILE_PAGES = 8192;
+
+    @Param({"128", "8192"})
+    public int workingSet;
+
+    @Param({"false", "true"})
+    public boolean directIo;
+
+    private String path;
+    private PageCache pc;
+    private byte[] init;
+
+    @Setup
+    public void setup() {
+        path = System.getProperty("java.io.tmpdir") + "/kkccdb_page_cache_bench_" + System.nanoTime() + ".db";
+        pc = PageCache.create(path, (long) CACHE_PAGES * PageCache.PAGE_SIZE, directIo);
+        init = new byte[PageCache.PAGE_SIZE];
+        for (int i = 0; i < FILE_PAGES; i++) {
+            pc.appendPage(init);
+        }
+        pc.force();
+    }
+
+    @TearDown
+    public void tearDown() {
+        pc.close();
+        new File(path).delete();
+    }
+
+    @Benchmark
+    public Page getPage() throws Exception {
+        return pc.getPage(1 + ThreadLocalRandom.current().nextInt(workingSet));
+    }
+
+    /**
+     * 写回一个缓存中的页面，每次都fsync
+     */
+    @Benchmark
+    public void flushPage() throws Exception {
+        Page pg = pc.getPage(1 + ThreadLocalRandom.current().nextInt(Math.min(workingSet, CACHE_PAGES / 2)));
+        pc.flushPage(pg);
+    }
+
+    /**
+     * 追加新页，每次都fsync
+     */
+    @Benchmark
+    public int newPage() {
+        return pc.newPage(init);
+    }
+}
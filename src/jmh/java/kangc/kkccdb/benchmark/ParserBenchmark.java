@@ -0,0 +1,90 @@
+package kangc.kkccdb.benchmark;
+
+import kangc.kkccdb.backend.common.Codec;
+import kangc.kkccdb.backend.common.Parser;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Parser的编码和解码，以及Codec在已有数组上的读写
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class ParserBenchmark {
+
+    private long longValue = 0x0123456789ABCDEFL;
+    private int intValue = 0x01234567;
+    private short shortValue = 0x0123;
+    private final byte[] longBytes = Parser.long2Byte(longValue);
+    private final byte[] intBytes = Parser.int2Byte(intValue);
+    private final byte[] shortBytes = Parser.short2Byte(shortValue);
+    private final byte[] frame = new byte[64];
+    private final long[] longs = new long[4];
+
+    @Benchmark
+    public byte[] long2Byte() {
+        return Parser.long2Byte(longValue);
+    }
+
+    @Benchmark
+    public long parseLong() {
+        return Parser.parseLong(longBytes);
+    }
+
+    @Benchmark
+    public byte[] int2Byte() {
+        return Parser.int2Byte(intValue);
+    }
+
+    @Benchmark
+    public int parseInt() {
+        return Parser.parseInt(intBytes);
+    }
+
+    @Benchmark
+    public byte[] short2Byte() {
+        return Parser.short2Byte(shortValue);
+    }
+
+    @Benchmark
+    public short parseShort() {
+        return Parser.parseShort(shortBytes);
+    }
+
+    @Benchmark
+    public byte[] codecPutLong() {
+        Codec.putLong(frame, 3, longValue);
+        return frame;
+    }
+
+    @Benchmark
+    public long codecGetLong() {
+        return Codec.getLong(frame, 3);
+    }
+
+    @Benchmark
+    public long codecVarLong() {
+        int end = Codec.putSignedVarLong(frame, 0, longValue);
+        return Codec.getSignedVarLong(frame, 0) + end;
+    }
+
+    @Benchmark
+    public long[] codecLongs() {
+        Codec.putLongs(frame, 0, longs, 0, 4);
+        Codec.getLongs(frame, 32, longs, 0, 4);
+        return longs;
+    }
+}
@@ -0,0 +1,74 @@
+package kangc.kkccdb.benchmark;
+
+import kangc.kkccdb.backend.manager.transaction.TransactionManager;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * TransactionManager的begin、commit、isCommitted
+ * begin之后必须结束事务，否则活跃事务表会一直增长，所以begin和commit放在一起测；
+ * 单独的begin用begin+rollback对比（rollback和commit一样要刷盘）
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class TransactionManagerBenchmark {
+
+    private static final int COMMITTED = 100000;
+
+    private String path;
+    private TransactionManager tm;
+
+    @Setup
+    public void setup() {
+        path = System.getProperty("java.io.tmpdir") + "/kkccdb_tm_bench_" + System.nanoTime() + ".trxId";
+        tm = TransactionManager.create(path);
+        for (int i = 0; i < COMMITTED; i++) {
+            tm.commit(tm.begin());
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        tm.close();
+        new File(path).delete();
+    }
+
+    @Benchmark
+    public long beginCommit() {
+        long xid = tm.begin();
+        tm.commit(xid);
+        return xid;
+    }
+
+    /**
+     * 和beginCommit对比，回滚同样经过组提交刷盘，只是写入的状态不同
+     */
+    @Benchmark
+    public long beginRollback() {
+        long xid = tm.begin();
+        tm.rollback(xid);
+        return xid;
+    }
+
+    @Benchmark
+    public boolean isCommitted() {
+        return tm.isCommitted(1 + ThreadLocalRandom.current().nextInt(COMMITTED));
+    }
+}
@@ -1,10 +1,86 @@
 package kangc.kkccdb;
 
+import kangc.kkccdb.backend.server.Executor;
+import kangc.kkccdb.backend.server.Server;
+import kangc.kkccdb.client.LoadClient;
+import kangc.kkccdb.workload.Workload;
+import kangc.kkccdb.workload.WorkloadDriver;
+
+import java.util.Arrays;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
 /**
  * 动手写个数据库！启动
+ * <p>
+ * create [path]                                     创建数据库
+ * server [path] [port]                              打开数据库并启动服务
+ * bench [host] [port] [connections] [pipeline] [requests]  压测
+ * workload [path] [key=value...]                    在本地新建数据库并执行负载，参数见Workload
  */
 public class KKCCDBApplication {
-    public static void main(String[] args) {
-        System.out.println("hello, kkccdb");
+
+    private static final long MEMORY = 64L << 20;
+    private static final int DEFAULT_PORT = 9999;
+    private static final long HOT_PAGES_INTERVAL_SECONDS = 60;
+
+    public static void main(String[] args) throws Exception {
+        if (args.length == 0) {
+            System.out.println("hello, kkccdb");
+            usage();
+            return;
+        }
+        switch (args[0]) {
+            case "create":
+                Executor.create(arg(args, 1, "kkccdb"), MEMORY).close();
+                break;
+            case "server": {
+                Executor executor = Executor.open(arg(args, 1, "kkccdb"), MEMORY, true);
+                Server server = new Server(Integer.parseInt(arg(args, 2, String.valueOf(DEFAULT_PORT))), executor,
+                        Runtime.getRuntime().availableProcessors() * 2);
+                server.start();
+                // 定期保存热点页面，异常退出后重启也能预热
+                ScheduledExecutorService checkpoint = Executors.newSingleThreadScheduledExecutor(r -> {
+                    Thread t = new Thread(r, "kkccdb-hot-pages");
+                    t.setDaemon(true);
+                    return t;
+                });
+                checkpoint.scheduleWithFixedDelay(executor::saveHotPages, HOT_PAGES_INTERVAL_SECONDS,
+                        HOT_PAGES_INTERVAL_SECONDS, TimeUnit.SECONDS);
+                Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+                    checkpoint.shutdownNow();
+                    server.close();
+                    executor.close();
+                }));
+                System.out.println("kkccdb listening on " + server.getPort());
+                break;
+            }
+            case "bench": {
+                LoadClient client = new LoadClient(arg(args, 1, "localhost"),
+                        Integer.parseInt(arg(args, 2, String.valueOf(DEFAULT_PORT))),
+                        Integer.parseInt(arg(args, 3, "8")), Integer.parseInt(arg(args, 4, "16")),
+                        10000, 0.9, 100);
+                System.out.println(client.run(Integer.parseInt(arg(args, 5, "200000"))));
+                break;
+            }
+            case "workload": {
+                String[] params = args.length > 2 ? Arrays.copyOfRange(args, 2, args.length) : new String[0];
+                WorkloadDriver driver = new WorkloadDriver(Workload.parse(params));
+                System.out.print(driver.run(arg(args, 1, "kkccdb-workload")));
+                break;
+            }
+            default:
+                usage();
+        }
+    }
+
+    private static String arg(String[] args, int i, String defaultValue) {
+        return args.length > i ? args[i] : defaultValue;
+    }
+
+    private static void usage() {
+        System.out.println("usage: create [path] | server [path] [port] | bench [host] [port] [connections] [pipeline] [requests]"
+                + " | workload [path] [key=value...]");
     }
 }
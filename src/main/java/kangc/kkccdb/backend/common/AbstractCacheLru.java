@@ -1,10 +1,17 @@
 package kangc.kkccdb.backend.common;
 
-import java.util.HashMap;
-import java.util.LinkedList;
+import kangc.kkccdb.backend.jfr.CacheWaitEvent;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.LockSupport;
 import java.util.concurrent.locks.ReentrantLock;
 
 /**
@@ -12,33 +19,52 @@ import java.util.concurrent.locks.ReentrantLock;
  */
 public abstract class AbstractCacheLru<T> {
 
-    // 链表，维护资源的访问顺序。最右端表示最不常被访问的数据
-    private final LinkedList<Long> cacheKeysList;   // 最新使用的资源放到头部（头插法）
+    // 缩容时每批淘汰的key数，写回在缓存锁外进行，批与批之间其它线程可以访问缓存
+    private static final int RESIZE_BATCH = 8;
 
-    // 缓存的数据
-    private final HashMap<Long, T> cache;
+    // 缓存的数据，头部是最久未被访问的，命中时把key重新插入到尾部，移动是O(1)的
+    // 不用LinkedHashMap的访问顺序模式，是为了peek()读取时可以不改变顺序
+    private final LinkedHashMap<Long, T> cache;
 
     // 当前资源key，是否有线程在操作
     private final ConcurrentHashMap<Long, Boolean> getting;
 
-    // 最大容量
-    private final int maxResource;
+    // 最大容量，可以在运行时通过resize()调整
+    private volatile int maxResource;
     private final Lock lock;
 
+    // 最近被淘汰的key（影子缓存），只记录key，不占数据的内存
+    // 未命中的key在这里面，说明容量再大ghostCapacity就能命中，用来估计扩容的收益
+    private final LinkedHashMap<Long, Boolean> ghost;
+    private int ghostCapacity;
+
+    // 累计的命中、未命中、影子命中次数，在lock内修改
+    private long hits;
+    private long misses;
+    private long ghostHits;
+
     public AbstractCacheLru(int maxResource) {
-        cacheKeysList = new LinkedList<>();
-        cache = new HashMap<>();
+        cache = new LinkedHashMap<>();
         getting = new ConcurrentHashMap<>();
         this.maxResource = maxResource;
         lock = new ReentrantLock();
+        ghost = new LinkedHashMap<>();
     }
 
     public T get(long key) throws Exception {
+        // 只在需要等待时创建
+        CacheWaitEvent wait = null;
         while (true) {
             lock.lock();
             // 请求的资源key，其它线程在操作
             if (getting.containsKey(key)) {
                 lock.unlock();
+                if (wait == null) {
+                    wait = new CacheWaitEvent();
+                    wait.begin();
+                } else {
+                    wait.retries++;
+                }
                 try {
                     Thread.sleep(1);
                 } catch (InterruptedException e) {
@@ -49,20 +75,26 @@ public abstract class AbstractCacheLru<T> {
             }
 
             // key在cache中存在，直接返回对应的value
-            if (cache.containsKey(key)) {
-                T obj = cache.get(key);
-                // 先删，再从头部添加key
-                cacheKeysList.remove(key);
-                cacheKeysList.addFirst(key);
+            T hit = cache.remove(key);
+            if (hit != null) {
+                // 重新插入，移到尾部
+                cache.put(key, hit);
+                hits++;
                 lock.unlock();
-                return obj;
+                commitWait(wait, key);
+                return hit;
             }
 
             // 资源key不在缓存中，需要从其它地方获取（磁盘等）
+            misses++;
+            if (ghostCapacity > 0 && ghost.remove(key) != null) {
+                ghostHits++;
+            }
             getting.put(key, true);     // 当前线程正在操作这个资源
             lock.unlock();
             break;
         }
+        commitWait(wait, key);
 
         T obj = null;
         try {
@@ -71,24 +103,114 @@ public abstract class AbstractCacheLru<T> {
         } catch (Exception e) {
             lock.lock();
             getting.remove(key);
-            lock.lock();
+            lock.unlock();
             throw e;
         }
 
         lock.lock();
         getting.remove(key);
-        if (cache.size() == maxResource) {
+        while (!cache.isEmpty() && cache.size() >= maxResource) {
             // 缓存满，淘汰最不常使用的key
-            release(cacheKeysList.getLast());
+            release(cache.keySet().iterator().next());
         }
-        // 把从外界获取的key，插入缓存
+        // 把从外界获取的key，插入缓存尾部
         cache.put(key, obj);
-        cacheKeysList.addFirst(key);
         lock.unlock();
 
         return obj;
     }
 
+    private void commitWait(CacheWaitEvent wait, long key) {
+        if (wait != null && wait.shouldCommit()) {
+            wait.cache = getClass().getSimpleName();
+            wait.key = key;
+            wait.commit();
+        }
+    }
+
+    /**
+     * 只查看key是否在缓存中，不加载、不改变淘汰顺序，不在缓存中返回null
+     * key正在被其它线程加载或写回（缩容）时先等待，返回null时外界的数据不会比缓存中的旧
+     */
+    protected T peek(long key) {
+        while (true) {
+            lock.lock();
+            try {
+                if (!getting.containsKey(key)) {
+                    return cache.get(key);
+                }
+            } finally {
+                lock.unlock();
+            }
+            LockSupport.parkNanos(1_000_000);
+        }
+    }
+
+    /**
+     * 缓存中的所有key，从最近访问的到最久未访问的
+     */
+    protected long[] recentKeys() {
+        lock.lock();
+        try {
+            long[] keys = new long[cache.size()];
+            int i = keys.length;
+            for (long key : cache.keySet()) {
+                keys[--i] = key;
+            }
+            return keys;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 预加载：key不在缓存中、也没有其它线程在加载时，用loader加载后放入缓存尾部
+     * 只占用空闲的容量，不淘汰其它key。加载期间其它线程get(key)会等待，不会重复加载
+     *
+     * @return 缓存已满时返回false，之后的预加载都不会成功
+     */
+    protected boolean preload(long key, Loader<T> loader) throws Exception {
+        lock.lock();
+        try {
+            if (cache.size() >= maxResource) {
+                return false;
+            }
+            if (cache.containsKey(key) || getting.containsKey(key)) {
+                return true;
+            }
+            getting.put(key, true);
+        } finally {
+            lock.unlock();
+        }
+
+        T obj;
+        try {
+            obj = loader.load(key);
+        } catch (Exception e) {
+            lock.lock();
+            getting.remove(key);
+            lock.unlock();
+            throw e;
+        }
+
+        lock.lock();
+        try {
+            getting.remove(key);
+            // 加载期间缓存被其它key占满，丢弃
+            if (cache.size() >= maxResource) {
+                return false;
+            }
+            cache.put(key, obj);
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    protected interface Loader<T> {
+        T load(long key) throws Exception;
+    }
+
     /**
      * 淘汰一个最不常用的key
      */
@@ -98,9 +220,113 @@ public abstract class AbstractCacheLru<T> {
             T obj = cache.get(key);
             if (obj == null) return;
             releaseForCache(obj);
-            // 缓存map、链表中，同时删掉key
             cache.remove(key);
-            cacheKeysList.remove(key);
+            addGhost(key);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void addGhost(long key) {
+        if (ghostCapacity > 0) {
+            ghost.put(key, Boolean.TRUE);
+            if (ghost.size() > ghostCapacity) {
+                ghost.remove(ghost.keySet().iterator().next());
+            }
+        }
+    }
+
+    public int capacity() {
+        return maxResource;
+    }
+
+    /**
+     * 调整容量，缩小时立即淘汰最久未访问的key，直到不超过新的容量
+     * 每次在锁内摘下RESIZE_BATCH个key并标记为正在操作，在锁外写回：写回期间get和peek这些key会等待写回完成，
+     * 不会从外界读到旧数据；其它key的访问不受影响
+     */
+    public void resize(int maxResource) {
+        if (maxResource < 1) {
+            throw new IllegalArgumentException("缓存容量必须大于0");
+        }
+        this.maxResource = maxResource;
+        List<Long> keys = new ArrayList<>(RESIZE_BATCH);
+        List<T> objs = new ArrayList<>(RESIZE_BATCH);
+        while (true) {
+            keys.clear();
+            objs.clear();
+            lock.lock();
+            try {
+                Iterator<Map.Entry<Long, T>> it = cache.entrySet().iterator();
+                while (cache.size() > this.maxResource && keys.size() < RESIZE_BATCH && it.hasNext()) {
+                    Map.Entry<Long, T> e = it.next();
+                    it.remove();
+                    keys.add(e.getKey());
+                    objs.add(e.getValue());
+                    getting.put(e.getKey(), true);
+                }
+            } finally {
+                lock.unlock();
+            }
+            if (keys.isEmpty()) {
+                return;
+            }
+            try {
+                releaseBatchForCache(objs);
+            } finally {
+                lock.lock();
+                try {
+                    for (long key : keys) {
+                        getting.remove(key);
+                        addGhost(key);
+                    }
+                } finally {
+                    lock.unlock();
+                }
+            }
+        }
+    }
+
+    /**
+     * 记录最近淘汰的n个key，用于统计影子命中，n为0时不记录
+     */
+    public void trackGhosts(int n) {
+        lock.lock();
+        try {
+            ghostCapacity = n;
+            while (ghost.size() > n) {
+                ghost.remove(ghost.keySet().iterator().next());
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public long hits() {
+        lock.lock();
+        try {
+            return hits;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public long misses() {
+        lock.lock();
+        try {
+            return misses;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 未命中、但key在最近淘汰的ghostCapacity个key中的次数
+     */
+    public long ghostHits() {
+        lock.lock();
+        try {
+            return ghostHits;
         } finally {
             lock.unlock();
         }
@@ -112,11 +338,10 @@ public abstract class AbstractCacheLru<T> {
     public void close() {
         lock.lock();
         try {
-            Set<Long> keys = cache.keySet();
+            // 复制一份key，release会修改cache
+            Set<Long> keys = new HashSet<>(cache.keySet());
             for (long key : keys) {
                 release(key);
-                cache.remove(key);
-                cacheKeysList.remove(key);
             }
         } finally {
             lock.unlock();
@@ -133,4 +358,13 @@ public abstract class AbstractCacheLru<T> {
      * key从内存被淘汰时，写回策略
      */
     protected abstract void releaseForCache(T obj);
+
+    /**
+     * 缩容时一次淘汰一批，不持有缓存锁；实现类可以重写，合并写回后只刷一次盘
+     */
+    protected void releaseBatchForCache(List<T> objs) {
+        for (T obj : objs) {
+            releaseForCache(obj);
+        }
+    }
 }
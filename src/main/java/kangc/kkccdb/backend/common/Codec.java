@@ -0,0 +1,176 @@
+package kangc.kkccdb.backend.common;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * 在已有的byte[]上按偏移读写基本类型，不分配任何对象
+ * <p>
+ * 定长编码都是大端序，和Parser、ByteBuffer默认的字节序一致，已有的文件格式不变；
+ * byte[]上的读写通过VarHandle把字节数组看作short/int/long数组，JIT会编译成一条读写指令。
+ * <p>
+ * 变长编码（varint）：每个字节低7位是数据，最高位为1表示后面还有字节，小端序排列，
+ * long最多10个字节。有符号数先做zigzag编码，让绝对值小的负数也只占很少的字节。
+ */
+public class Codec {
+
+    private static final VarHandle SHORT = MethodHandles.byteArrayViewVarHandle(short[].class, ByteOrder.BIG_ENDIAN);
+    private static final VarHandle INT = MethodHandles.byteArrayViewVarHandle(int[].class, ByteOrder.BIG_ENDIAN);
+    private static final VarHandle LONG = MethodHandles.byteArrayViewVarHandle(long[].class, ByteOrder.BIG_ENDIAN);
+
+    // varint编码long最多占的字节数
+    public static final int MAX_VAR_LONG_SIZE = 10;
+
+    public static short getShort(byte[] b, int offset) {
+        return (short) SHORT.get(b, offset);
+    }
+
+    public static void putShort(byte[] b, int offset, short v) {
+        SHORT.set(b, offset, v);
+    }
+
+    public static int getInt(byte[] b, int offset) {
+        return (int) INT.get(b, offset);
+    }
+
+    public static void putInt(byte[] b, int offset, int v) {
+        INT.set(b, offset, v);
+    }
+
+    public static long getLong(byte[] b, int offset) {
+        return (long) LONG.get(b, offset);
+    }
+
+    public static void putLong(byte[] b, int offset, long v) {
+        LONG.set(b, offset, v);
+    }
+
+    // ---------- 批量读写 ----------
+
+    public static void putShorts(byte[] b, int offset, short[] src, int from, int n) {
+        for (int i = 0; i < n; i++) {
+            SHORT.set(b, offset + (i << 1), src[from + i]);
+        }
+    }
+
+    public static void getShorts(byte[] b, int offset, short[] dst, int from, int n) {
+        for (int i = 0; i < n; i++) {
+            dst[from + i] = (short) SHORT.get(b, offset + (i << 1));
+        }
+    }
+
+    public static void putInts(byte[] b, int offset, int[] src, int from, int n) {
+        for (int i = 0; i < n; i++) {
+            INT.set(b, offset + (i << 2), src[from + i]);
+        }
+    }
+
+    public static void getInts(byte[] b, int offset, int[] dst, int from, int n) {
+        for (int i = 0; i < n; i++) {
+            dst[from + i] = (int) INT.get(b, offset + (i << 2));
+        }
+    }
+
+    public static void putLongs(byte[] b, int offset, long[] src, int from, int n) {
+        for (int i = 0; i < n; i++) {
+            LONG.set(b, offset + (i << 3), src[from + i]);
+        }
+    }
+
+    public static void getLongs(byte[] b, int offset, long[] dst, int from, int n) {
+        for (int i = 0; i < n; i++) {
+            dst[from + i] = (long) LONG.get(b, offset + (i << 3));
+        }
+    }
+
+    // ---------- 变长编码 ----------
+
+    public static long zigzag(long v) {
+        return (v << 1) ^ (v >> 63);
+    }
+
+    public static long unzigzag(long v) {
+        return (v >>> 1) ^ -(v & 1);
+    }
+
+    /**
+     * v按varint编码后的字节数
+     */
+    public static int varLongSize(long v) {
+        // 有效位数除以7向上取整，v为0时占1个字节
+        int bits = 64 - Long.numberOfLeadingZeros(v | 1);
+        return (bits + 6) / 7;
+    }
+
+    /**
+     * 在offset处写入varint，返回写完后的偏移
+     */
+    public static int putVarLong(byte[] b, int offset, long v) {
+        while ((v & ~0x7FL) != 0) {
+            b[offset++] = (byte) ((v & 0x7F) | 0x80);
+            v >>>= 7;
+        }
+        b[offset++] = (byte) v;
+        return offset;
+    }
+
+    /**
+     * 读取offset处的varint，占用的字节数用varLongSize(返回值)计算
+     */
+    public static long getVarLong(byte[] b, int offset) {
+        long v = 0;
+        for (int shift = 0; ; shift += 7) {
+            byte x = b[offset++];
+            v |= (long) (x & 0x7F) << shift;
+            if (x >= 0) {
+                return v;
+            }
+            if (shift >= 63) {
+                throw new IllegalArgumentException("varint过长");
+            }
+        }
+    }
+
+    public static int putSignedVarLong(byte[] b, int offset, long v) {
+        return putVarLong(b, offset, zigzag(v));
+    }
+
+    public static long getSignedVarLong(byte[] b, int offset) {
+        return unzigzag(getVarLong(b, offset));
+    }
+
+    /**
+     * 在buf的当前位置写入varint，position随之前进
+     */
+    public static void putVarLong(ByteBuffer buf, long v) {
+        while ((v & ~0x7FL) != 0) {
+            buf.put((byte) ((v & 0x7F) | 0x80));
+            v >>>= 7;
+        }
+        buf.put((byte) v);
+    }
+
+    public static long getVarLong(ByteBuffer buf) {
+        long v = 0;
+        for (int shift = 0; ; shift += 7) {
+            byte x = buf.get();
+            v |= (long) (x & 0x7F) << shift;
+            if (x >= 0) {
+                return v;
+            }
+            if (shift >= 63) {
+                throw new IllegalArgumentException("varint过长");
+            }
+        }
+    }
+
+    public static void putSignedVarLong(ByteBuffer buf, long v) {
+        putVarLong(buf, zigzag(v));
+    }
+
+    public static long getSignedVarLong(ByteBuffer buf) {
+        return unzigzag(getVarLong(buf));
+    }
+}
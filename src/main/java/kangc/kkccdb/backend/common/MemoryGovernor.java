@@ -0,0 +1,239 @@
+package kangc.kkccdb.backend.common;
+
+import kangc.kkccdb.backend.jfr.RebalanceFailureEvent;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 进程内的内存调节器：管理一个总预算，在注册的缓存之间按边际收益分配
+ * <p>
+ * 每个缓存记录最近淘汰的、相当于一步（step字节）的key，未命中的key如果在里面（影子命中），
+ * 说明再多一步内存就能命中。每轮调节比较各缓存这一轮的影子命中数，
+ * 从收益最小的缓存拿走一步内存给收益最大的缓存。命中率曲线是凹的时候，
+ * 扩容一步的收益不小于缩容一步的损失，所以用同一个数同时估计两者。
+ * <p>
+ * 先缩小再扩大，任何时刻各缓存的容量之和都不超过预算。
+ */
+public class MemoryGovernor {
+
+    // 收益按上一轮的值平滑，避免来回抖动
+    private static final double SMOOTHING = 0.5;
+
+    // 收益至少高出这么多才移动内存
+    private static final double MIN_GAIN = 1;
+
+    private long budget;
+    private final long step;
+    private final List<Registration> caches;
+    private ScheduledExecutorService scheduler;
+
+    private static class Registration {
+        final String name;
+        final AbstractCacheLru<?> cache;
+        final long entryBytes;
+        final long minBytes;
+        long bytes;
+        long lastGhostHits;
+        double benefit;
+
+        Registration(String name, AbstractCacheLru<?> cache, long entryBytes, long minBytes) {
+            this.name = name;
+            this.cache = cache;
+            this.entryBytes = entryBytes;
+            this.minBytes = minBytes;
+        }
+    }
+
+    /**
+     * @param budget 所有缓存一共可以使用的字节数
+     * @param step   每轮调节移动的字节数
+     */
+    public MemoryGovernor(long budget, long step) {
+        if (step <= 0 || budget < step) {
+            throw new IllegalArgumentException("预算必须不小于每步的大小");
+        }
+        this.budget = budget;
+        this.step = step;
+        this.caches = new ArrayList<>();
+    }
+
+    /**
+     * 注册一个缓存，所有缓存重新平分预算
+     *
+     * @param entryBytes 每个缓存项大约占用的字节数
+     * @param minBytes   缓存至少保留的字节数
+     */
+    public synchronized void register(String name, AbstractCacheLru<?> cache, long entryBytes, long minBytes) {
+        long reserved = minBytes;
+        for (Registration r : caches) {
+            reserved += r.minBytes;
+        }
+        if (reserved > budget) {
+            throw new IllegalArgumentException("预算不够所有缓存的最小容量");
+        }
+        Registration r = new Registration(name, cache, entryBytes, minBytes);
+        r.lastGhostHits = cache.ghostHits();
+        cache.trackGhosts((int) Math.max(1, step / entryBytes));
+        caches.add(r);
+        redistribute();
+    }
+
+    public synchronized void unregister(AbstractCacheLru<?> cache) {
+        caches.removeIf(r -> r.cache == cache);
+        cache.trackGhosts(0);
+        redistribute();
+    }
+
+    /**
+     * 调整总预算，所有缓存重新平分
+     */
+    public synchronized void setBudget(long budget) {
+        long reserved = 0;
+        for (Registration r : caches) {
+            reserved += r.minBytes;
+        }
+        if (budget < step || budget < reserved) {
+            throw new IllegalArgumentException("预算不够所有缓存的最小容量");
+        }
+        this.budget = budget;
+        redistribute();
+    }
+
+    public synchronized long getBudget() {
+        return budget;
+    }
+
+    /**
+     * 缓存当前分到的字节数，没有注册时返回0
+     */
+    public synchronized long allocation(AbstractCacheLru<?> cache) {
+        for (Registration r : caches) {
+            if (r.cache == cache) {
+                return r.bytes;
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * 每个缓存先保留最小容量，剩下的预算平分
+     */
+    private void redistribute() {
+        if (caches.isEmpty()) {
+            return;
+        }
+        long reserved = 0;
+        for (Registration r : caches) {
+            reserved += r.minBytes;
+        }
+        long share = (budget - reserved) / caches.size();
+        // 先缩小，再扩大
+        for (Registration r : caches) {
+            if (r.minBytes + share < r.bytes) {
+                apply(r, r.minBytes + share);
+            }
+        }
+        for (Registration r : caches) {
+            if (r.minBytes + share > r.bytes) {
+                apply(r, r.minBytes + share);
+            }
+        }
+    }
+
+    private void apply(Registration r, long bytes) {
+        r.bytes = bytes;
+        r.cache.resize((int) Math.max(1, bytes / r.entryBytes));
+    }
+
+    /**
+     * 一轮调节，最多移动一步内存，返回是否移动了
+     */
+    public synchronized boolean rebalance() {
+        for (Registration r : caches) {
+            long ghostHits = r.cache.ghostHits();
+            r.benefit = SMOOTHING * r.benefit + (1 - SMOOTHING) * (ghostHits - r.lastGhostHits);
+            r.lastGhostHits = ghostHits;
+        }
+        Registration recipient = null;
+        for (Registration r : caches) {
+            if (recipient == null || r.benefit > recipient.benefit) {
+                recipient = r;
+            }
+        }
+        Registration donor = null;
+        for (Registration r : caches) {
+            if (r != recipient && r.bytes - step >= r.minBytes && (donor == null || r.benefit < donor.benefit)) {
+                donor = r;
+            }
+        }
+        if (recipient == null || donor == null || recipient.benefit < donor.benefit + MIN_GAIN) {
+            return false;
+        }
+        apply(donor, donor.bytes - step);
+        apply(recipient, recipient.bytes + step);
+        return true;
+    }
+
+    /**
+     * 在后台线程中每隔periodMillis毫秒调节一轮
+     */
+    public synchronized void start(long periodMillis) {
+        if (scheduler != null) {
+            return;
+        }
+        scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "kkccdb-memory-governor");
+            t.setDaemon(true);
+            return t;
+        });
+        scheduler.scheduleWithFixedDelay(this::rebalanceQuietly, periodMillis, periodMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * 定时任务抛出异常后不会再被调度，这里把异常记成JFR事件，下一轮继续调节
+     */
+    private void rebalanceQuietly() {
+        try {
+            rebalance();
+        } catch (Throwable t) {
+            RebalanceFailureEvent event = new RebalanceFailureEvent();
+            if (event.shouldCommit()) {
+                event.exception = t.getClass().getName();
+                event.message = t.getMessage();
+                event.commit();
+            }
+        }
+    }
+
+    public void close() {
+        ScheduledExecutorService s;
+        synchronized (this) {
+            s = scheduler;
+            scheduler = null;
+        }
+        if (s != null) {
+            s.shutdownNow();
+            try {
+                s.awaitTermination(10, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    @Override
+    public synchronized String toString() {
+        StringBuilder sb = new StringBuilder();
+        for (Registration r : caches) {
+            if (sb.length() > 0) {
+                sb.append(", ");
+            }
+            sb.append(String.format("%s %.1f MB", r.name, r.bytes / 1048576.0));
+        }
+        return sb.toString();
+    }
+}
@@ -1,27 +1,41 @@
 package kangc.kkccdb.backend.common;
 
-import java.nio.ByteBuffer;
-
+/**
+ * 基本类型和字节数组互转，大端序
+ * 解析不分配对象；x2Byte每次返回新数组，热点路径上应直接用Codec写入已有的数组
+ */
 public class Parser {
 
+    public static short parseShort(byte[] buf) {
+        return Codec.getShort(buf, 0);
+    }
+
+    public static byte[] short2Byte(short value) {
+        byte[] b = new byte[Short.BYTES];
+        Codec.putShort(b, 0, value);
+        return b;
+    }
+
     public static int parseInt(byte[] buf) {
-        ByteBuffer buffer = ByteBuffer.wrap(buf, 0, 4);
-        return buffer.getInt();
+        return Codec.getInt(buf, 0);
     }
 
     public static byte[] int2Byte(int value) {
-        return ByteBuffer.allocate(Integer.SIZE / Byte.SIZE).putInt(value).array();
+        byte[] b = new byte[Integer.BYTES];
+        Codec.putInt(b, 0, value);
+        return b;
     }
 
     /**
      * 把缓冲区的前8个字节转成long
      */
     public static long parseLong(byte[] buf) {
-        ByteBuffer buffer = ByteBuffer.wrap(buf, 0, 8);
-        return buffer.getLong();
+        return Codec.getLong(buf, 0);
     }
 
     public static byte[] long2Byte(long value) {
-        return ByteBuffer.allocate(Long.SIZE / Byte.SIZE).putLong(value).array();
+        byte[] b = new byte[Long.BYTES];
+        Codec.putLong(b, 0, value);
+        return b;
     }
 }
@@ -0,0 +1,48 @@
+package kangc.kkccdb.backend.common;
+
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * 按字节数限速，用于备份等后台I/O，避免占满磁盘带宽
+ * <p>
+ * 每次acquire把下一次可以开始的时间往后推bytes / bytesPerSecond，调用方先等到轮到自己再做I/O；
+ * 空闲了一段时间后不会攒下额度，每次最多提前一个请求的量。
+ */
+public class RateLimiter {
+
+    private final long bytesPerSecond;
+
+    // 下一个请求最早可以开始的时间
+    private long next;
+
+    /**
+     * @param bytesPerSecond 每秒字节数，不大于0时不限速
+     */
+    public RateLimiter(long bytesPerSecond) {
+        this.bytesPerSecond = bytesPerSecond;
+        this.next = System.nanoTime();
+    }
+
+    /**
+     * 申请bytes字节的额度，需要时阻塞到额度足够
+     */
+    public void acquire(long bytes) {
+        if (bytesPerSecond <= 0) {
+            return;
+        }
+        long wait;
+        synchronized (this) {
+            long now = System.nanoTime();
+            if (next < now) {
+                next = now;
+            }
+            wait = next - now;
+            next += (long) (bytes * 1e9 / bytesPerSecond);
+        }
+        long deadline = System.nanoTime() + wait;
+        while (wait > 0) {
+            LockSupport.parkNanos(wait);
+            wait = deadline - System.nanoTime();
+        }
+    }
+}
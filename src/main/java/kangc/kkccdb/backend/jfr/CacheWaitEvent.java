@@ -0,0 +1,26 @@
+package kangc.kkccdb.backend.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * 请求的资源正被其它线程从外部加载，在缓存中等待，事件的持续时间就是等待时间
+ */
+@Name("kkccdb.CacheWait")
+@Label("Cache Wait")
+@Category({"KKCCDB", "Cache"})
+@Description("等待其它线程加载同一个key")
+public class CacheWaitEvent extends Event {
+
+    @Label("Cache")
+    public String cache;
+
+    @Label("Key")
+    public long key;
+
+    @Label("Retries")
+    public int retries;
+}
@@ -0,0 +1,30 @@
+package kangc.kkccdb.backend.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Threshold;
+import jdk.jfr.Timespan;
+
+/**
+ * 预留事务id区间，事件的持续时间是等锁加持锁的总时间
+ */
+@Name("kkccdb.CounterLock")
+@Label("Counter Lock")
+@Category({"KKCCDB", "Transaction"})
+@Description("预留事务id区间时获取并持有counterLock")
+@Threshold("1 ms")
+public class CounterLockEvent extends Event {
+
+    @Label("Wait Time")
+    @Timespan(Timespan.NANOSECONDS)
+    public long waitTime;
+
+    @Label("Reserved Limit")
+    public long trxIdLimit;
+
+    @Label("Froze")
+    public boolean froze;
+}
@@ -0,0 +1,43 @@
+package kangc.kkccdb.backend.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Threshold;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+
+/**
+ * 一次fsync，file是文件类型：page、log、trxId
+ */
+@Name("kkccdb.Fsync")
+@Label("Fsync")
+@Category({"KKCCDB", "IO"})
+@Description("FileChannel.force刷盘")
+@Threshold("1 ms")
+public class FsyncEvent extends Event {
+
+    @Label("File")
+    public String file;
+
+    @Label("Metadata")
+    public boolean metaData;
+
+    /**
+     * 刷盘并记录事件，事件未开启时只多一次shouldCommit判断
+     */
+    public static void force(FileChannel fc, boolean metaData, String file) throws IOException {
+        FsyncEvent event = new FsyncEvent();
+        event.begin();
+        fc.force(metaData);
+        event.end();
+        if (event.shouldCommit()) {
+            event.file = file;
+            event.metaData = metaData;
+            event.commit();
+        }
+    }
+}
@@ -0,0 +1,30 @@
+package kangc.kkccdb.backend.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Threshold;
+
+/**
+ * 页面写回文件，forced表示是否刷盘（刷盘本身另有FsyncEvent）
+ */
+@Name("kkccdb.PageFlush")
+@Label("Page Flush")
+@Category({"KKCCDB", "Page Cache"})
+@Description("把一页写回文件")
+@Threshold("1 ms")
+public class PageFlushEvent extends Event {
+
+    @Label("Page Number")
+    public int pageNumber;
+
+    @Label("Bytes")
+    @DataAmount
+    public int bytes;
+
+    @Label("Forced")
+    public boolean forced;
+}
@@ -0,0 +1,27 @@
+package kangc.kkccdb.backend.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Threshold;
+
+/**
+ * 页面缓存未命中，从文件读取页面
+ */
+@Name("kkccdb.PageRead")
+@Label("Page Read")
+@Category({"KKCCDB", "Page Cache"})
+@Description("页面缓存未命中时从文件读取一页")
+@Threshold("1 ms")
+public class PageReadEvent extends Event {
+
+    @Label("Page Number")
+    public int pageNumber;
+
+    @Label("Bytes")
+    @DataAmount
+    public int bytes;
+}
@@ -0,0 +1,23 @@
+package kangc.kkccdb.backend.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * 内存调节器的一轮定时调节抛出异常，这一轮放弃，下一轮继续
+ */
+@Name("kkccdb.RebalanceFailure")
+@Label("Rebalance Failure")
+@Category({"KKCCDB", "Cache"})
+@Description("内存调节器在缓存之间移动内存时失败")
+public class RebalanceFailureEvent extends Event {
+
+    @Label("Exception")
+    public String exception;
+
+    @Label("Message")
+    public String message;
+}
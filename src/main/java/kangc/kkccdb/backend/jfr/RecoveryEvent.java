@@ -0,0 +1,26 @@
+package kangc.kkccdb.backend.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * 打开数据库时发现上次没有正常关闭，根据日志恢复，事件的持续时间就是恢复时间
+ */
+@Name("kkccdb.Recovery")
+@Label("Recovery")
+@Category({"KKCCDB", "Data"})
+@Description("根据日志重做已提交事务、撤销未提交事务")
+public class RecoveryEvent extends Event {
+
+    @Label("Pages")
+    public int pages;
+
+    @Label("Redone")
+    public long redone;
+
+    @Label("Undone")
+    public long undone;
+}
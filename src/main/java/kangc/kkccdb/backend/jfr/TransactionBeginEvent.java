@@ -0,0 +1,25 @@
+package kangc.kkccdb.backend.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Threshold;
+
+/**
+ * 开始一个事务，reserved表示这次begin用完了预留区间，需要加counterLock预留新区间
+ */
+@Name("kkccdb.TransactionBegin")
+@Label("Transaction Begin")
+@Category({"KKCCDB", "Transaction"})
+@Description("TransactionManager.begin")
+@Threshold("1 ms")
+public class TransactionBeginEvent extends Event {
+
+    @Label("Transaction Id")
+    public long trxId;
+
+    @Label("Reserved")
+    public boolean reserved;
+}
@@ -0,0 +1,84 @@
+package kangc.kkccdb.backend.manager.data;
+
+import kangc.kkccdb.backend.common.MemoryGovernor;
+import kangc.kkccdb.backend.manager.data.dataItem.DataItem;
+import kangc.kkccdb.backend.manager.data.logger.Logger;
+import kangc.kkccdb.backend.manager.data.pageCache.PageCache;
+import kangc.kkccdb.backend.manager.transaction.TransactionManager;
+
+import java.io.IOException;
+
+/**
+ * 数据管理模块，在页面缓存之上管理变长数据项
+ */
+public interface DataManager {
+
+    /**
+     * 根据uid读取数据项，数据项已被撤销时返回null
+     */
+    DataItem read(long uid) throws Exception;
+
+    /**
+     * 插入数据，返回数据项的uid
+     */
+    long insert(long xid, byte[] data) throws Exception;
+
+    /**
+     * 原地更新数据项，新数据的大小必须和原来相同
+     */
+    void update(long xid, long uid, byte[] data) throws Exception;
+
+    /**
+     * 保存页面缓存中的热点页面，close()时会自动保存
+     */
+    void saveHotPages();
+
+    /**
+     * 把页面缓存交给内存调节器管理
+     */
+    void register(MemoryGovernor governor);
+
+    /**
+     * 在线备份到path.db、path.log和事务ID文件trxIdPath，目标文件必须不存在，备份期间读写照常进行
+     * 副本像崩溃后的数据库一样，用DataManager.open(path, memory, TransactionManager.open(trxIdPath))
+     * 打开时从日志恢复到备份时的某个一致状态
+     *
+     * @param bytesPerSecond 复制的速度上限，不大于0时不限速
+     */
+    void backup(String path, TransactionManager tm, String trxIdPath, long bytesPerSecond) throws IOException;
+
+    void close();
+
+    public static DataManager create(String path, long memory) {
+        PageCache pc = PageCache.create(path + DataManagerImpl.DB_SUFFIX, memory);
+        Logger lg = Logger.create(path);
+
+        DataManagerImpl dm = new DataManagerImpl(pc, lg, (int) (memory / PageCache.PAGE_SIZE));
+        dm.initPageOne();
+        return dm;
+    }
+
+    public static DataManager open(String path, long memory, TransactionManager tm) {
+        return open(path, memory, tm, false);
+    }
+
+    /**
+     * @param prewarm 恢复完成后，是否在后台按上次关闭时的热点页面预热页面缓存
+     */
+    public static DataManager open(String path, long memory, TransactionManager tm, boolean prewarm) {
+        PageCache pc = PageCache.open(path + DataManagerImpl.DB_SUFFIX, memory);
+        Logger lg = Logger.open(path);
+
+        DataManagerImpl dm = new DataManagerImpl(pc, lg, (int) (memory / PageCache.PAGE_SIZE));
+        // 上次没有正常关闭，从日志恢复
+        if (!dm.loadCheckPageOne()) {
+            Recover.recover(tm, lg, pc);
+        }
+        dm.fillPageIndex();
+        dm.setPageOneVcOpen();
+        if (prewarm) {
+            pc.prewarm();
+        }
+        return dm;
+    }
+}
@@ -0,0 +1,252 @@
+package kangc.kkccdb.backend.manager.data;
+
+import kangc.kkccdb.backend.common.AbstractCacheLru;
+import kangc.kkccdb.backend.common.MemoryGovernor;
+import kangc.kkccdb.backend.common.RateLimiter;
+import kangc.kkccdb.backend.manager.data.dataItem.DataItem;
+import kangc.kkccdb.backend.manager.data.dataItem.DataItemImpl;
+import kangc.kkccdb.backend.manager.data.logger.Logger;
+import kangc.kkccdb.backend.manager.data.logger.LoggerImpl;
+import kangc.kkccdb.backend.manager.data.page.Page;
+import kangc.kkccdb.backend.manager.data.page.PageOne;
+import kangc.kkccdb.backend.manager.data.page.SlottedPage;
+import kangc.kkccdb.backend.manager.data.pageCache.PageCache;
+import kangc.kkccdb.backend.manager.data.pageIndex.PageIndex;
+import kangc.kkccdb.backend.manager.data.pageIndex.PageInfo;
+import kangc.kkccdb.backend.manager.transaction.TransactionManager;
+import kangc.kkccdb.utils.Errors;
+import kangc.kkccdb.utils.Panic;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * 数据管理模块实现，缓存数据项
+ * <p>
+ * 第1页用于启动检查，数据项从第2页开始存放。插入时通过空闲空间索引选页，不扫描页面
+ */
+public class DataManagerImpl extends AbstractCacheLru<DataItem> implements DataManager {
+
+    public static final String DB_SUFFIX = ".db";
+
+    // 空闲空间索引里找不到页时，新建页再找，最多重试的次数
+    private static final int SELECT_RETRY = 5;
+
+    // 打开时扫描页面统计空闲空间，每次读入的页数
+    private static final int FILL_SCAN_CHUNK = 64;
+
+    private final PageCache pc;
+    private final Logger logger;
+    private final PageIndex pIndex;
+
+    DataManagerImpl(PageCache pc, Logger logger, int maxResource) {
+        super(maxResource);
+        this.pc = pc;
+        this.logger = logger;
+        this.pIndex = new PageIndex();
+    }
+
+    @Override
+    public DataItem read(long uid) throws Exception {
+        DataItem di = get(uid);
+        if (!di.isValid()) {
+            return null;
+        }
+        return di;
+    }
+
+    @Override
+    public long insert(long xid, byte[] data) throws Exception {
+        byte[] raw = DataItem.wrapDataItemRaw(data);
+        if (raw.length + SlottedPage.SLOT_SIZE > SlottedPage.MAX_FREE_SPACE) {
+            throw Errors.DataTooLargeException;
+        }
+
+        // 从空闲空间索引选一个放得下的页，没有就新建一页
+        PageInfo pi = null;
+        for (int i = 0; i < SELECT_RETRY; i++) {
+            pi = pIndex.select(raw.length + SlottedPage.SLOT_SIZE);
+            if (pi != null) {
+                break;
+            }
+            int newPgno = pc.newPage(SlottedPage.initRaw());
+            pIndex.add(newPgno, SlottedPage.MAX_FREE_SPACE);
+        }
+        if (pi == null) {
+            throw Errors.DatabaseBusyException;
+        }
+
+        int freeSpace = pi.freeSpace;
+        try {
+            Page pg = pc.lockPage(pi.pgno);
+            try {
+                // 先写日志，再修改页面
+                int slot = SlottedPage.nextSlot(pg);
+                int offset = SlottedPage.nextOffset(pg, raw.length);
+                logger.log(Recover.insertLog(xid, pi.pgno, slot, offset, raw));
+                SlottedPage.insert(pg, raw);
+                freeSpace = SlottedPage.getFreeSpace(pg);
+                return DataItem.uid(pi.pgno, slot);
+            } finally {
+                pg.unlock();
+            }
+        } finally {
+            // 按插入后的剩余空间放回索引
+            pIndex.add(pi.pgno, freeSpace);
+        }
+    }
+
+    @Override
+    public void update(long xid, long uid, byte[] data) throws Exception {
+        DataItemImpl di = (DataItemImpl) get(uid);
+        if (!di.isValid()) {
+            throw Errors.InvalidUidException;
+        }
+        byte[] newRaw = DataItem.wrapDataItemRaw(data);
+
+        di.lock();
+        try {
+            byte[] oldRaw = di.getRaw();
+            if (oldRaw.length != newRaw.length) {
+                throw Errors.DataSizeMismatchException;
+            }
+            int pgno = DataItem.pgno(uid);
+            int slot = DataItem.slot(uid);
+            Page pg = pc.lockPage(pgno);
+            try {
+                int offset = SlottedPage.getOffset(pg, slot);
+                logger.log(Recover.updateLog(xid, pgno, slot, offset, oldRaw, newRaw));
+                SlottedPage.update(pg, newRaw, offset);
+            } finally {
+                pg.unlock();
+            }
+            di.setRaw(newRaw);
+        } finally {
+            di.unlock();
+        }
+    }
+
+    /**
+     * 数据项不在缓存中，从页面中拷贝出来
+     */
+    @Override
+    protected DataItem getForCache(long uid) throws Exception {
+        int pgno = DataItem.pgno(uid);
+        int slot = DataItem.slot(uid);
+        if (pgno <= 1 || pgno > pc.getPageNumber()) {
+            throw Errors.InvalidUidException;
+        }
+        Page pg = pc.getPage(pgno);
+        pg.lock();
+        try {
+            int offset = SlottedPage.getOffset(pg, slot);
+            if (offset == 0) {
+                throw Errors.InvalidUidException;
+            }
+            byte[] data = pg.getData();
+            int length = DataItem.rawLength(data, offset);
+            return new DataItemImpl(uid, Arrays.copyOfRange(data, offset, offset + length));
+        } finally {
+            pg.unlock();
+        }
+    }
+
+    /**
+     * 修改在写日志时就已经写进页面，缓存的数据项淘汰时不需要写回
+     */
+    @Override
+    protected void releaseForCache(DataItem di) {
+    }
+
+    @Override
+    public void saveHotPages() {
+        pc.saveHotPages();
+    }
+
+    @Override
+    public void register(MemoryGovernor governor) {
+        pc.register(governor);
+    }
+
+    /**
+     * 按顺序复制页面、事务状态、日志：
+     * 先写日志再改页面，页面副本中的修改都在之后复制的日志里，恢复时重做即可修复副本中过时的页面；
+     * 事务提交前日志已经写完，事务状态副本中已提交的事务，日志也都在之后复制的日志里，
+     * 其余事务在副本中都是aborted。第1页在运行期间标记为未正常关闭，打开副本时一定会恢复
+     */
+    @Override
+    public void backup(String path, TransactionManager tm, String trxIdPath, long bytesPerSecond) throws IOException {
+        RateLimiter limiter = new RateLimiter(bytesPerSecond);
+        try (FileChannel db = createBackupFile(path + DB_SUFFIX);
+             FileChannel trx = createBackupFile(trxIdPath);
+             FileChannel log = createBackupFile(path + LoggerImpl.LOG_SUFFIX)) {
+            pc.backup(db, limiter);
+            tm.backup(trx, limiter);
+            logger.backup(log, limiter);
+            db.force(true);
+            trx.force(true);
+            log.force(true);
+        }
+    }
+
+    private static FileChannel createBackupFile(String path) throws IOException {
+        return FileChannel.open(Paths.get(path), StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+    }
+
+    @Override
+    public void close() {
+        super.close();
+        logger.close();
+
+        Page pg = getPageOne();
+        PageOne.setVcClose(pg);
+        pc.flushPage(pg);
+        pc.close();
+    }
+
+    /**
+     * 创建数据库时初始化第1页
+     */
+    void initPageOne() {
+        int pgno = pc.newPage(PageOne.initRaw());
+        assert pgno == 1;
+    }
+
+    /**
+     * 打开数据库时检查第1页，判断上次是否正常关闭
+     */
+    boolean loadCheckPageOne() {
+        return PageOne.checkVc(getPageOne());
+    }
+
+    void setPageOneVcOpen() {
+        Page pg = getPageOne();
+        PageOne.setVcOpen(pg);
+        pc.flushPage(pg);
+    }
+
+    /**
+     * 打开数据库时扫描所有数据页，构建空闲空间索引
+     */
+    void fillPageIndex() {
+        // 顺序扫描，不经过缓存，不会把热点页面挤出去
+        pc.scan(FILL_SCAN_CHUNK).forEachRemaining(pg -> {
+            if (pg.getPageNumber() >= 2) {
+                pIndex.add(pg.getPageNumber(), SlottedPage.getFreeSpace(pg));
+            }
+        });
+    }
+
+    private Page getPageOne() {
+        Page pg = null;
+        try {
+            pg = pc.getPage(1);
+        } catch (Exception e) {
+            Panic.panic(e);
+        }
+        return pg;
+    }
+}
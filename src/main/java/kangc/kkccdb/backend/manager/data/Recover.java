@@ -0,0 +1,214 @@
+package kangc.kkccdb.backend.manager.data;
+
+import kangc.kkccdb.backend.common.Codec;
+import kangc.kkccdb.backend.jfr.RecoveryEvent;
+import kangc.kkccdb.backend.manager.data.dataItem.DataItem;
+import kangc.kkccdb.backend.manager.data.logger.Logger;
+import kangc.kkccdb.backend.manager.data.page.Page;
+import kangc.kkccdb.backend.manager.data.page.SlottedPage;
+import kangc.kkccdb.backend.manager.data.pageCache.PageCache;
+import kangc.kkccdb.backend.manager.transaction.TransactionManager;
+import kangc.kkccdb.utils.Panic;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * 根据日志恢复数据页
+ * <p>
+ * 插入日志：[LogType 1B][TrxId 8B][Pgno 4B][Slot 2B][Offset 2B][Raw]
+ * 更新日志：[LogType 1B][TrxId 8B][Pgno 4B][Slot 2B][Offset 2B][OldRaw][NewRaw]，新旧数据项大小相同
+ * <p>
+ * 先按顺序重做已提交事务的日志，再倒序撤销所有未提交事务的日志，崩溃时仍活跃的事务标记为回滚
+ */
+public class Recover {
+
+    private static final byte LOG_TYPE_INSERT = 0;
+    private static final byte LOG_TYPE_UPDATE = 1;
+
+    private static final int OF_TYPE = 0;
+    private static final int OF_XID = OF_TYPE + 1;
+    private static final int OF_PGNO = OF_XID + 8;
+    private static final int OF_SLOT = OF_PGNO + 4;
+    private static final int OF_OFFSET = OF_SLOT + 2;
+    private static final int OF_RAW = OF_OFFSET + 2;
+
+    private static class LogInfo {
+        byte type;
+        long xid;
+        int pgno;
+        int slot;
+        int offset;
+        byte[] oldRaw;
+        byte[] newRaw;
+    }
+
+    public static void recover(TransactionManager tm, Logger lg, PageCache pc) {
+        RecoveryEvent event = new RecoveryEvent();
+        event.begin();
+
+        lg.rewind();
+        int maxPgno = 0;
+        long maxXid = 0;
+        while (true) {
+            byte[] log = lg.next();
+            if (log == null) break;
+            LogInfo li = parseLog(log);
+            maxPgno = Math.max(maxPgno, li.pgno);
+            maxXid = Math.max(maxXid, li.xid);
+        }
+        // 日志中的事务id不再分配，事务ID文件中没有记录的按aborted处理
+        tm.skipTrxIds(maxXid);
+        if (maxPgno == 0) {
+            maxPgno = 1;
+        }
+        // 丢弃日志中没有用到的页，日志中用到但文件中没有的页补成空页
+        pc.truncateByPageNum(maxPgno);
+
+        long redone = redoTransactions(tm, lg, pc);
+        long undone = undoTransactions(tm, lg, pc);
+
+        event.end();
+        if (event.shouldCommit()) {
+            event.pages = maxPgno;
+            event.redone = redone;
+            event.undone = undone;
+            event.commit();
+        }
+    }
+
+    /**
+     * 返回重做的日志数
+     */
+    private static long redoTransactions(TransactionManager tm, Logger lg, PageCache pc) {
+        long redone = 0;
+        lg.rewind();
+        while (true) {
+            byte[] log = lg.next();
+            if (log == null) break;
+            LogInfo li = parseLog(log);
+            if (tm.isCommitted(li.xid)) {
+                apply(pc, li, li.newRaw);
+                redone++;
+            }
+        }
+        return redone;
+    }
+
+    /**
+     * 倒序撤销所有未提交事务的日志。重新打开的事务ID文件中，崩溃时还在执行的事务已是aborted，不能按活跃判断
+     * 运行时回滚不会物理撤销，之后提交的事务可能已经改写了同一个数据项，这样的日志不再撤销，以免覆盖已提交的数据
+     * 返回撤销的日志数
+     */
+    private static long undoTransactions(TransactionManager tm, Logger lg, PageCache pc) {
+        long undone = 0;
+        List<LogInfo> uncommitted = new ArrayList<>();
+        List<Integer> positions = new ArrayList<>();
+        // 数据项 -> 最后一条已提交日志的序号
+        Map<Long, Integer> lastCommitted = new HashMap<>();
+        lg.rewind();
+        for (int i = 0; ; i++) {
+            byte[] log = lg.next();
+            if (log == null) break;
+            LogInfo li = parseLog(log);
+            if (tm.isCommitted(li.xid)) {
+                lastCommitted.put(item(li), i);
+            } else {
+                uncommitted.add(li);
+                positions.add(i);
+            }
+        }
+
+        Set<Long> active = new LinkedHashSet<>();
+        for (int i = uncommitted.size() - 1; i >= 0; i--) {
+            LogInfo li = uncommitted.get(i);
+            if (tm.isActive(li.xid)) {
+                active.add(li.xid);
+            }
+            Integer committed = lastCommitted.get(item(li));
+            if (committed != null && committed > positions.get(i)) {
+                continue;
+            }
+            if (li.type == LOG_TYPE_INSERT) {
+                byte[] raw = li.newRaw.clone();
+                DataItem.setDataItemRawInvalid(raw);
+                apply(pc, li, raw);
+            } else {
+                apply(pc, li, li.oldRaw);
+            }
+            undone++;
+        }
+        // 没有重新打开事务ID文件时，崩溃时的事务仍是活跃的
+        for (long xid : active) {
+            tm.rollback(xid);
+        }
+        return undone;
+    }
+
+    private static long item(LogInfo li) {
+        return ((long) li.pgno << 16) | li.offset;
+    }
+
+    private static void apply(PageCache pc, LogInfo li, byte[] raw) {
+        Page pg = null;
+        try {
+            pg = pc.lockPage(li.pgno);
+        } catch (Exception e) {
+            Panic.panic(e);
+        }
+        try {
+            if (li.type == LOG_TYPE_INSERT) {
+                SlottedPage.recoverInsert(pg, raw, li.slot, li.offset);
+            } else {
+                SlottedPage.recoverUpdate(pg, raw, li.offset);
+            }
+        } finally {
+            pg.unlock();
+        }
+    }
+
+    public static byte[] insertLog(long xid, int pgno, int slot, int offset, byte[] raw) {
+        byte[] log = logHeader(LOG_TYPE_INSERT, xid, pgno, slot, offset, raw.length);
+        System.arraycopy(raw, 0, log, OF_RAW, raw.length);
+        return log;
+    }
+
+    public static byte[] updateLog(long xid, int pgno, int slot, int offset, byte[] oldRaw, byte[] newRaw) {
+        byte[] log = logHeader(LOG_TYPE_UPDATE, xid, pgno, slot, offset, oldRaw.length + newRaw.length);
+        System.arraycopy(oldRaw, 0, log, OF_RAW, oldRaw.length);
+        System.arraycopy(newRaw, 0, log, OF_RAW + oldRaw.length, newRaw.length);
+        return log;
+    }
+
+    private static byte[] logHeader(byte type, long xid, int pgno, int slot, int offset, int rawLength) {
+        byte[] log = new byte[OF_RAW + rawLength];
+        log[OF_TYPE] = type;
+        Codec.putLong(log, OF_XID, xid);
+        Codec.putInt(log, OF_PGNO, pgno);
+        Codec.putShort(log, OF_SLOT, (short) slot);
+        Codec.putShort(log, OF_OFFSET, (short) offset);
+        return log;
+    }
+
+    private static LogInfo parseLog(byte[] log) {
+        LogInfo li = new LogInfo();
+        li.type = log[OF_TYPE];
+        li.xid = Codec.getLong(log, OF_XID);
+        li.pgno = Codec.getInt(log, OF_PGNO);
+        li.slot = Codec.getShort(log, OF_SLOT) & 0xFFFF;
+        li.offset = Codec.getShort(log, OF_OFFSET) & 0xFFFF;
+        int rawLength = log.length - OF_RAW;
+        if (li.type == LOG_TYPE_INSERT) {
+            li.newRaw = Arrays.copyOfRange(log, OF_RAW, log.length);
+        } else {
+            li.oldRaw = Arrays.copyOfRange(log, OF_RAW, OF_RAW + rawLength / 2);
+            li.newRaw = Arrays.copyOfRange(log, OF_RAW + rawLength / 2, log.length);
+        }
+        return li;
+    }
+}
@@ -0,0 +1,67 @@
+package kangc.kkccdb.backend.manager.data.dataItem;
+
+import kangc.kkccdb.backend.common.Codec;
+
+/**
+ * 数据项，保存在槽式数据页中，用uid(页号 << 32 | 槽位)定位
+ * <p>
+ * 数据项格式：[ValidFlag 1B][DataSize 2B][Data]
+ * ValidFlag为0表示有效，为1表示无效（插入被撤销）
+ */
+public interface DataItem {
+
+    int OF_VALID = 0;
+    int OF_SIZE = 1;
+    int OF_DATA = 3;
+
+    /**
+     * 数据部分的副本
+     */
+    byte[] data();
+
+    boolean isValid();
+
+    long getUid();
+
+    void lock();
+
+    void unlock();
+
+    void rLock();
+
+    void rUnlock();
+
+    /**
+     * 把数据包装成数据项格式
+     */
+    static byte[] wrapDataItemRaw(byte[] data) {
+        byte[] raw = new byte[OF_DATA + data.length];
+        raw[OF_VALID] = 0;
+        Codec.putShort(raw, OF_SIZE, (short) data.length);
+        System.arraycopy(data, 0, raw, OF_DATA, data.length);
+        return raw;
+    }
+
+    static void setDataItemRawInvalid(byte[] raw) {
+        raw[OF_VALID] = 1;
+    }
+
+    /**
+     * 数据项在页内占的总字节数（从raw的offset处读取DataSize）
+     */
+    static int rawLength(byte[] page, int offset) {
+        return OF_DATA + (Codec.getShort(page, offset + OF_SIZE) & 0xFFFF);
+    }
+
+    static long uid(int pgno, int slot) {
+        return ((long) pgno << 32) | (slot & 0xFFFFFFFFL);
+    }
+
+    static int pgno(long uid) {
+        return (int) (uid >>> 32);
+    }
+
+    static int slot(long uid) {
+        return (int) uid;
+    }
+}
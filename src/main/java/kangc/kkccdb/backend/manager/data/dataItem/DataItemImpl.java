@@ -0,0 +1,78 @@
+package kangc.kkccdb.backend.manager.data.dataItem;
+
+import java.util.Arrays;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * 缓存中的数据项，保存页中数据项的一份拷贝
+ * 所有修改都经过DataManager，先写日志和页面，再替换这里的拷贝，缓存不直接引用页面，页面被淘汰也不影响
+ */
+public class DataItemImpl implements DataItem {
+
+    private final long uid;
+
+    // 数据项原始字节：[ValidFlag][DataSize][Data]
+    private volatile byte[] raw;
+
+    private final Lock rLock;
+    private final Lock wLock;
+
+    public DataItemImpl(long uid, byte[] raw) {
+        this.uid = uid;
+        this.raw = raw;
+        ReadWriteLock lock = new ReentrantReadWriteLock();
+        rLock = lock.readLock();
+        wLock = lock.writeLock();
+    }
+
+    @Override
+    public byte[] data() {
+        return Arrays.copyOfRange(raw, OF_DATA, raw.length);
+    }
+
+    @Override
+    public boolean isValid() {
+        return raw[OF_VALID] == 0;
+    }
+
+    @Override
+    public long getUid() {
+        return uid;
+    }
+
+    /**
+     * 原始字节，不要修改
+     */
+    public byte[] getRaw() {
+        return raw;
+    }
+
+    /**
+     * 页面中的数据项已更新，替换拷贝
+     */
+    public void setRaw(byte[] raw) {
+        this.raw = raw;
+    }
+
+    @Override
+    public void lock() {
+        wLock.lock();
+    }
+
+    @Override
+    public void unlock() {
+        wLock.unlock();
+    }
+
+    @Override
+    public void rLock() {
+        rLock.lock();
+    }
+
+    @Override
+    public void rUnlock() {
+        rLock.unlock();
+    }
+}
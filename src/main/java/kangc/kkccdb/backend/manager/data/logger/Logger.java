@@ -1,6 +1,8 @@
 package kangc.kkccdb.backend.manager.data.logger;
 
 import kangc.kkccdb.backend.common.Parser;
+import kangc.kkccdb.backend.common.RateLimiter;
+import kangc.kkccdb.backend.jfr.FsyncEvent;
 import kangc.kkccdb.utils.Panic;
 
 import java.io.File;
@@ -9,6 +11,7 @@ import java.io.IOException;
 import java.io.RandomAccessFile;
 import java.nio.ByteBuffer;
 import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
 
 
 public interface Logger {
@@ -20,6 +23,12 @@ public interface Logger {
 
     void rewind();
 
+    /**
+     * 在线备份：复制调用时刻已写入的所有日志和与之对应的总校验和，返回复制的字节数
+     * 之后追加的日志不在副本中，副本可以像正常的日志文件一样打开
+     */
+    long backup(WritableByteChannel target, RateLimiter limiter) throws IOException;
+
     void close();
 
     public static Logger create(String path) {
@@ -48,7 +57,7 @@ public interface Logger {
         try {
             fc.position(0);
             fc.write(buf);
-            fc.force(false);
+            FsyncEvent.force(fc, false, "log");
         } catch (IOException e) {
             Panic.panic(e);
         }
@@ -0,0 +1,271 @@
+package kangc.kkccdb.backend.manager.data.logger;
+
+import kangc.kkccdb.backend.common.Codec;
+import kangc.kkccdb.backend.common.Parser;
+import kangc.kkccdb.backend.common.RateLimiter;
+import kangc.kkccdb.backend.jfr.FsyncEvent;
+import kangc.kkccdb.utils.Panic;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.Arrays;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 日志文件读写
+ * <p>
+ * 日志文件格式：[XChecksum 4B][Log1][Log2]...[LogN][BadTail]
+ * XChecksum是后续所有日志的总校验和，BadTail是崩溃时没写完的日志，打开时会被截掉
+ * <p>
+ * 每条日志格式：[Size 4B][Checksum 4B][Data]
+ */
+public class LoggerImpl implements Logger {
+
+    private static final int SEED = 13331;
+
+    private static final int OF_SIZE = 0;
+    private static final int OF_CHECKSUM = OF_SIZE + 4;
+    private static final int OF_DATA = OF_CHECKSUM + 4;
+
+    // 备份时每次复制的字节数
+    private static final int BACKUP_CHUNK = 1 << 20;
+
+    public static final String LOG_SUFFIX = ".log";
+
+    private final RandomAccessFile file;
+    private final FileChannel fileChannel;
+    private final Lock lock;
+
+    // 当前日志指针的位置
+    private long position;
+
+    // 初始化时记录，log操作不更新
+    private long fileSize;
+
+    // 所有日志的总校验和
+    private int xChecksum;
+
+    // 写总校验和用的缓冲区，在lock内复用
+    private final ByteBuffer checksumBuf = ByteBuffer.allocate(4);
+
+    LoggerImpl(RandomAccessFile file, FileChannel fileChannel) {
+        this.file = file;
+        this.fileChannel = fileChannel;
+        lock = new ReentrantLock();
+    }
+
+    LoggerImpl(RandomAccessFile file, FileChannel fileChannel, int xChecksum) {
+        this.file = file;
+        this.fileChannel = fileChannel;
+        this.xChecksum = xChecksum;
+        lock = new ReentrantLock();
+    }
+
+    /**
+     * 读取总校验和，校验日志并截掉不完整的尾部
+     */
+    void init() {
+        long size = 0;
+        try {
+            size = file.length();
+        } catch (IOException e) {
+            Panic.panic(e);
+        }
+        if (size < 4) {
+            Panic.panic(new RuntimeException("日志文件损坏!"));
+        }
+
+        ByteBuffer raw = ByteBuffer.allocate(4);
+        try {
+            fileChannel.read(raw, 0);
+        } catch (IOException e) {
+            Panic.panic(e);
+        }
+        this.xChecksum = Parser.parseInt(raw.array());
+        this.fileSize = size;
+
+        checkAndRemoveTail();
+    }
+
+    /**
+     * 检查总校验和，移除不完整的日志尾部
+     */
+    private void checkAndRemoveTail() {
+        rewind();
+
+        int xCheck = 0;
+        while (true) {
+            byte[] log = internNext();
+            if (log == null) break;
+            xCheck = calChecksum(xCheck, log);
+        }
+        if (xCheck != xChecksum) {
+            Panic.panic(new RuntimeException("日志文件损坏!"));
+        }
+
+        try {
+            truncate(position);
+        } catch (Exception e) {
+            Panic.panic(e);
+        }
+        rewind();
+    }
+
+    private int calChecksum(int xCheck, byte[] log) {
+        return calChecksum(xCheck, log, 0, log.length);
+    }
+
+    private int calChecksum(int xCheck, byte[] log, int from, int to) {
+        for (int i = from; i < to; i++) {
+            xCheck = xCheck * SEED + log[i];
+        }
+        return xCheck;
+    }
+
+    /**
+     * 追加一条日志，并更新总校验和，返回时日志已刷盘
+     */
+    @Override
+    public void log(byte[] data) {
+        byte[] log = wrapLog(data);
+        ByteBuffer buf = ByteBuffer.wrap(log);
+        lock.lock();
+        try {
+            fileChannel.write(buf, fileChannel.size());
+            updateXChecksum(log);
+        } catch (IOException e) {
+            Panic.panic(e);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void updateXChecksum(byte[] log) {
+        this.xChecksum = calChecksum(this.xChecksum, log);
+        try {
+            checksumBuf.clear();
+            checksumBuf.putInt(0, xChecksum);
+            fileChannel.write(checksumBuf, 0);
+            FsyncEvent.force(fileChannel, false, "log");
+        } catch (IOException e) {
+            Panic.panic(e);
+        }
+    }
+
+    private byte[] wrapLog(byte[] data) {
+        byte[] log = new byte[OF_DATA + data.length];
+        Codec.putInt(log, OF_SIZE, data.length);
+        Codec.putInt(log, OF_CHECKSUM, calChecksum(0, data));
+        System.arraycopy(data, 0, log, OF_DATA, data.length);
+        return log;
+    }
+
+    @Override
+    public void truncate(long x) throws Exception {
+        lock.lock();
+        try {
+            fileChannel.truncate(x);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 读取下一条完整的日志（含Size和Checksum），读到文件尾或坏日志返回null
+     */
+    private byte[] internNext() {
+        if (position + OF_DATA >= fileSize) {
+            return null;
+        }
+        ByteBuffer tmp = ByteBuffer.allocate(4);
+        try {
+            fileChannel.read(tmp, position);
+        } catch (IOException e) {
+            Panic.panic(e);
+        }
+        int size = Parser.parseInt(tmp.array());
+        if (size < 0 || position + size + OF_DATA > fileSize) {
+            return null;
+        }
+
+        ByteBuffer buf = ByteBuffer.allocate(OF_DATA + size);
+        try {
+            fileChannel.read(buf, position);
+        } catch (IOException e) {
+            Panic.panic(e);
+        }
+
+        byte[] log = buf.array();
+        int checkSum1 = calChecksum(0, log, OF_DATA, log.length);
+        int checkSum2 = Codec.getInt(log, OF_CHECKSUM);
+        if (checkSum1 != checkSum2) {
+            return null;
+        }
+        position += log.length;
+        return log;
+    }
+
+    /**
+     * 迭代读取下一条日志的数据部分
+     */
+    @Override
+    public byte[] next() {
+        lock.lock();
+        try {
+            byte[] log = internNext();
+            if (log == null) return null;
+            return Arrays.copyOfRange(log, OF_DATA, log.length);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 在锁内取日志长度和总校验和，两者一一对应；日志只追加，之后在锁外复制[4, size)
+     */
+    @Override
+    public long backup(WritableByteChannel target, RateLimiter limiter) throws IOException {
+        long size;
+        int checksum;
+        lock.lock();
+        try {
+            size = fileChannel.size();
+            checksum = xChecksum;
+        } finally {
+            lock.unlock();
+        }
+        ByteBuffer header = ByteBuffer.wrap(Parser.int2Byte(checksum));
+        while (header.hasRemaining()) {
+            target.write(header);
+        }
+        long position = 4;
+        while (position < size) {
+            long len = Math.min(BACKUP_CHUNK, size - position);
+            limiter.acquire(len);
+            long end = position + len;
+            while (position < end) {
+                position += fileChannel.transferTo(position, end - position, target);
+            }
+        }
+        return size;
+    }
+
+    @Override
+    public void rewind() {
+        position = 4;
+    }
+
+    @Override
+    public void close() {
+        try {
+            fileChannel.close();
+            file.close();
+        } catch (IOException e) {
+            Panic.panic(e);
+        }
+    }
+}
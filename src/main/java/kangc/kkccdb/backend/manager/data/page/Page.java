@@ -17,6 +17,13 @@ public interface Page {
 
     boolean isDirty();
 
+    /**
+     * 设置页面已从缓存淘汰，淘汰后的页面对象不能再修改，否则修改会丢失
+     */
+    void setReleased(boolean released);
+
+    boolean isReleased();
+
     int getPageNumber();
 
     byte[] getData();
@@ -15,6 +15,9 @@ public class PageImpl implements Page {
 
     // 淘汰脏页，需要写回磁盘
     private boolean dirty;
+
+    // 已从缓存淘汰，在页锁内设置
+    private volatile boolean released;
     private final Lock lock;
 
     // 缓存页，通过Page实例快速释放缓存页
@@ -47,6 +50,14 @@ public class PageImpl implements Page {
         return dirty;
     }
 
+    public void setReleased(boolean released) {
+        this.released = released;
+    }
+
+    public boolean isReleased() {
+        return released;
+    }
+
     public int getPageNumber() {
         return pageNumber;
     }
@@ -0,0 +1,47 @@
+package kangc.kkccdb.backend.manager.data.page;
+
+import kangc.kkccdb.backend.manager.data.pageCache.PageCache;
+
+import java.security.SecureRandom;
+import java.util.Arrays;
+
+/**
+ * 第一页，用于启动检查
+ * <p>
+ * 数据库打开时在[100, 108)写入随机字节，正常关闭时拷贝到[108, 116)，
+ * 下次打开时两处不一致，说明上次没有正常关闭，需要从日志恢复
+ */
+public class PageOne {
+
+    private static final int OF_VC = 100;
+    private static final int LEN_VC = 8;
+
+    public static byte[] initRaw() {
+        byte[] raw = new byte[PageCache.PAGE_SIZE];
+        setVcOpen(raw);
+        return raw;
+    }
+
+    public static void setVcOpen(Page pg) {
+        pg.setDirty(true);
+        setVcOpen(pg.getData());
+    }
+
+    private static void setVcOpen(byte[] raw) {
+        byte[] vc = new byte[LEN_VC];
+        new SecureRandom().nextBytes(vc);
+        System.arraycopy(vc, 0, raw, OF_VC, LEN_VC);
+    }
+
+    public static void setVcClose(Page pg) {
+        pg.setDirty(true);
+        byte[] raw = pg.getData();
+        System.arraycopy(raw, OF_VC, raw, OF_VC + LEN_VC, LEN_VC);
+    }
+
+    public static boolean checkVc(Page pg) {
+        byte[] raw = pg.getData();
+        return Arrays.equals(Arrays.copyOfRange(raw, OF_VC, OF_VC + LEN_VC),
+                Arrays.copyOfRange(raw, OF_VC + LEN_VC, OF_VC + 2 * LEN_VC));
+    }
+}
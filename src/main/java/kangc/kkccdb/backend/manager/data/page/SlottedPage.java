@@ -0,0 +1,126 @@
+package kangc.kkccdb.backend.manager.data.page;
+
+import kangc.kkccdb.backend.common.Codec;
+import kangc.kkccdb.backend.manager.data.pageCache.PageCache;
+
+/**
+ * 槽式数据页，保存变长数据项，数据项用(页号, 槽位)定位
+ * <p>
+ * [槽位数 2B][数据区已用字节数 2B][槽位目录：每个槽位2B，数据项在页内的偏移][...空闲...][数据项，从页尾向前增长]
+ * 全0的页就是空页，恢复时可以直接在读不到的页上重做
+ */
+public class SlottedPage {
+
+    private static final short OF_SLOT_COUNT = 0;
+    private static final short OF_DATA_USED = OF_SLOT_COUNT + 2;
+    private static final short OF_SLOTS = OF_DATA_USED + 2;
+
+    // 每个槽位在目录中占2B
+    public static final int SLOT_SIZE = 2;
+
+    // 空页可用的空间
+    public static final int MAX_FREE_SPACE = PageCache.PAGE_SIZE - OF_SLOTS;
+
+    public static byte[] initRaw() {
+        return new byte[PageCache.PAGE_SIZE];
+    }
+
+    public static int getSlotCount(Page pg) {
+        return getSlotCount(pg.getData());
+    }
+
+    /**
+     * 页面剩余空间，插入数据项需要 数据项大小 + SLOT_SIZE
+     */
+    public static int getFreeSpace(Page pg) {
+        byte[] raw = pg.getData();
+        return dataStart(raw) - (OF_SLOTS + getSlotCount(raw) * SLOT_SIZE);
+    }
+
+    /**
+     * 下一个插入的数据项会使用的槽位
+     */
+    public static int nextSlot(Page pg) {
+        return getSlotCount(pg.getData());
+    }
+
+    /**
+     * 下一个插入的数据项在页内的偏移
+     */
+    public static int nextOffset(Page pg, int length) {
+        return dataStart(pg.getData()) - length;
+    }
+
+    /**
+     * 插入数据项，返回槽位。调用方需保证空间足够
+     */
+    public static int insert(Page pg, byte[] raw) {
+        pg.setDirty(true);
+        byte[] data = pg.getData();
+        int slot = getSlotCount(data);
+        int offset = dataStart(data) - raw.length;
+        place(data, raw, slot, offset);
+        return slot;
+    }
+
+    /**
+     * 原地覆盖偏移处的数据项，大小不变
+     */
+    public static void update(Page pg, byte[] raw, int offset) {
+        pg.setDirty(true);
+        System.arraycopy(raw, 0, pg.getData(), offset, raw.length);
+    }
+
+    /**
+     * 槽位中数据项在页内的偏移，槽位不存在或为空时返回0
+     */
+    public static int getOffset(Page pg, int slot) {
+        byte[] data = pg.getData();
+        if (slot < 0 || slot >= getSlotCount(data)) {
+            return 0;
+        }
+        return readShort(data, OF_SLOTS + slot * SLOT_SIZE);
+    }
+
+    /**
+     * 恢复时重做插入：把数据项放回原来的槽位和偏移
+     */
+    public static void recoverInsert(Page pg, byte[] raw, int slot, int offset) {
+        pg.setDirty(true);
+        place(pg.getData(), raw, slot, offset);
+    }
+
+    /**
+     * 恢复时重做/撤销更新：覆盖偏移处的数据项
+     */
+    public static void recoverUpdate(Page pg, byte[] raw, int offset) {
+        update(pg, raw, offset);
+    }
+
+    private static void place(byte[] data, byte[] raw, int slot, int offset) {
+        System.arraycopy(raw, 0, data, offset, raw.length);
+        writeShort(data, OF_SLOTS + slot * SLOT_SIZE, offset);
+        if (slot >= getSlotCount(data)) {
+            writeShort(data, OF_SLOT_COUNT, slot + 1);
+        }
+        if (offset < dataStart(data)) {
+            writeShort(data, OF_DATA_USED, PageCache.PAGE_SIZE - offset);
+        }
+    }
+
+    private static int getSlotCount(byte[] data) {
+        return readShort(data, OF_SLOT_COUNT);
+    }
+
+    private static int dataStart(byte[] data) {
+        return PageCache.PAGE_SIZE - readShort(data, OF_DATA_USED);
+    }
+
+    private static int readShort(byte[] data, int offset) {
+        return Codec.getShort(data, offset) & 0xFFFF;
+    }
+
+    private static void writeShort(byte[] data, int offset, int value) {
+        Codec.putShort(data, offset, (short) value);
+    }
+}
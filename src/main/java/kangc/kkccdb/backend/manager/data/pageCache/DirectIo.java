@@ -0,0 +1,99 @@
+package kangc.kkccdb.backend.manager.data.pageCache;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.OpenOption;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * 用O_DIRECT读写页面，绕过操作系统的页缓存，页面只在PageCache里缓存一份
+ * <p>
+ * 直接I/O要求缓冲区地址、文件偏移和长度都按块大小对齐：页大小是块大小的整数倍，
+ * 页的偏移也就对齐了；每个线程持有一个按块大小对齐的直接缓冲区，读写时和页面的byte[]互相复制。
+ */
+class DirectIo {
+
+    // com.sun.nio.file.ExtendedOpenOption.DIRECT，是JDK的内部API，反射加载，不支持的JDK上为null
+    private static final OpenOption DIRECT = directOption();
+
+    private final FileChannel channel;
+    private final ThreadLocal<ByteBuffer> buffers;
+
+    private DirectIo(FileChannel channel, int alignment) {
+        this.channel = channel;
+        this.buffers = ThreadLocal.withInitial(() ->
+                ByteBuffer.allocateDirect(PageCache.PAGE_SIZE + alignment).alignedSlice(alignment));
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private static OpenOption directOption() {
+        try {
+            Class<? extends Enum> c = (Class<? extends Enum>) Class.forName("com.sun.nio.file.ExtendedOpenOption");
+            return (OpenOption) Enum.valueOf(c, "DIRECT");
+        } catch (ClassNotFoundException | IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    /**
+     * 以O_DIRECT打开文件，文件系统或平台不支持时返回null，由调用方退回到普通读写
+     */
+    static DirectIo open(File f) {
+        if (DIRECT == null) {
+            return null;
+        }
+        FileChannel channel = null;
+        try {
+            int alignment = (int) Files.getFileStore(f.toPath()).getBlockSize();
+            if (alignment <= 0 || PageCache.PAGE_SIZE % alignment != 0) {
+                return null;
+            }
+            channel = FileChannel.open(f.toPath(), StandardOpenOption.READ, StandardOpenOption.WRITE,
+                    DIRECT);
+            DirectIo io = new DirectIo(channel, alignment);
+            // 有的文件系统（如tmpfs）能打开，读写时才报错，先试读一页
+            io.read(0, new byte[PageCache.PAGE_SIZE]);
+            return io;
+        } catch (IOException | UnsupportedOperationException e) {
+            if (channel != null) {
+                try {
+                    channel.close();
+                } catch (IOException ignored) {
+                }
+            }
+            return null;
+        }
+    }
+
+    /**
+     * 读offset处的一页到dst，超出文件末尾的部分是0
+     */
+    void read(long offset, byte[] dst) throws IOException {
+        ByteBuffer buf = buffers.get();
+        buf.clear().limit(PageCache.PAGE_SIZE);
+        // 文件长度是页的整数倍，一次读完整页；不在循环中续读，续读的偏移不一定对齐
+        channel.read(buf, offset);
+        int n = buf.position();
+        buf.flip();
+        buf.get(dst, 0, n);
+    }
+
+    /**
+     * 把一页写到offset处，不刷盘，数据还可能在磁盘的缓存中，持久化仍要fsync
+     */
+    void write(long offset, byte[] src) throws IOException {
+        ByteBuffer buf = buffers.get();
+        buf.clear();
+        buf.put(src).flip();
+        while (buf.hasRemaining()) {
+            channel.write(buf, offset + buf.position());
+        }
+    }
+
+    void close() throws IOException {
+        channel.close();
+    }
+}
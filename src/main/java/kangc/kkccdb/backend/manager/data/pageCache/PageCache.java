@@ -1,28 +1,55 @@
 package kangc.kkccdb.backend.manager.data.pageCache;
 
+import kangc.kkccdb.backend.common.MemoryGovernor;
+import kangc.kkccdb.backend.common.RateLimiter;
 import kangc.kkccdb.backend.manager.data.page.Page;
 import kangc.kkccdb.utils.Panic;
 
 import java.io.File;
 import java.io.FileNotFoundException;
+import java.io.IOException;
 import java.io.RandomAccessFile;
 import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.Spliterator;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Consumer;
 
 public interface PageCache {
 
     // 页面大小8KB, 2^13
     public static final int PAGE_SIZE = 1 << 13;
 
+    // 热点页面列表文件的后缀，跟在页面文件名后面
+    public static final String HOT_SUFFIX = ".hot";
+
     /**
      * 创建新页，返回页号
      */
     int newPage(byte[] initData);
 
+    /**
+     * 在文件末尾追加新页，只写入不刷盘，返回页号
+     * 用于批量写入大量页面，全部写完后调用force()刷盘一次
+     */
+    int appendPage(byte[] initData);
+
+    /**
+     * 把已写入文件的数据刷盘
+     */
+    void force();
+
     /**
      * 通过页号获取页
      */
     Page getPage(int pageNo) throws Exception;
 
+    /**
+     * 获取页并加页锁，保证返回时页面仍在缓存中，修改不会丢失
+     * 调用时不能持有其它页的锁：淘汰页面要在缓存锁内获取页锁
+     */
+    Page lockPage(int pgno) throws Exception;
+
     void close();
 
     void release(Page page);
@@ -42,7 +69,49 @@ public interface PageCache {
      */
     void flushPage(Page pg);
 
+    /**
+     * 遍历[1, getPageNumber()]的所有页面，每次从文件顺序读入chunkPages页
+     * 已在缓存中的页面返回缓存中的对象，其它页面直接从文件读取，不放入缓存，不会淘汰热点页面；
+     * 从文件读取的页面是只读的副本，修改不会写回。扫描不是一致的快照。
+     */
+    Spliterator<Page> scan(int chunkPages);
+
+    /**
+     * 在pool中并行扫描所有页面，consumer会被多个线程同时调用，页面之间没有顺序
+     */
+    void parallelScan(ForkJoinPool pool, int chunkPages, Consumer<Page> consumer);
+
+    /**
+     * 把缓存中的页号按最近访问的顺序保存到热点页面文件，close()时会自动调用，也可以定期调用
+     */
+    void saveHotPages();
+
+    /**
+     * 在后台线程中读入上次保存的热点页面，立即返回
+     * 按页号顺序读，只填充空闲的容量，不淘汰页面；有getPage()在读文件时预热线程先等待。
+     * 应在恢复、截断文件之后调用
+     */
+    void prewarm();
+
+    /**
+     * 在线备份：用transferTo把[1, getPageNumber()]的页面从文件复制到target，返回复制的字节数
+     * 只复制已写入文件的页面，缓存中的脏页不在其中；复制期间页面还在变化，副本必须配合之后复制的日志恢复
+     */
+    long backup(WritableByteChannel target, RateLimiter limiter) throws IOException;
+
+    /**
+     * 交给内存调节器管理，容量随调节器的分配变化
+     */
+    void register(MemoryGovernor governor);
+
     public static PageCacheImpl create(String path, long memory) {
+        return create(path, memory, false);
+    }
+
+    /**
+     * @param directIo 是否用O_DIRECT读写页面，不经过操作系统的页缓存；不支持时退回到普通读写，见isDirect()
+     */
+    public static PageCacheImpl create(String path, long memory, boolean directIo) {
         File f = new File(path);
         try {
             if (!f.createNewFile()) {
@@ -54,6 +123,9 @@ public interface PageCache {
         if (!f.canRead() || !f.canWrite()) {
             Panic.panic(new RuntimeException("无权限读写文件"));
         }
+        // 同名的旧数据库留下的热点页面列表
+        File hot = new File(path + HOT_SUFFIX);
+        hot.delete();
 
         FileChannel fc = null;
         RandomAccessFile raf = null;
@@ -63,10 +135,14 @@ public interface PageCache {
         } catch (FileNotFoundException e) {
             Panic.panic(e);
         }
-        return new PageCacheImpl(raf, fc, (int) memory / PAGE_SIZE);
+        return new PageCacheImpl(raf, fc, (int) memory / PAGE_SIZE, hot, directIo ? DirectIo.open(f) : null);
     }
 
     public static PageCacheImpl open(String path, long memory) {
+        return open(path, memory, false);
+    }
+
+    public static PageCacheImpl open(String path, long memory, boolean directIo) {
         File f = new File(path);
         if (!f.exists()) {
             Panic.panic(new RuntimeException("文件不能再!"));
@@ -83,6 +159,7 @@ public interface PageCache {
         } catch (FileNotFoundException e) {
             Panic.panic(e);
         }
-        return new PageCacheImpl(raf, fc, (int) memory / PAGE_SIZE);
+        return new PageCacheImpl(raf, fc, (int) memory / PAGE_SIZE, new File(path + HOT_SUFFIX),
+                directIo ? DirectIo.open(f) : null);
     }
 }
@@ -1,22 +1,51 @@
 package kangc.kkccdb.backend.manager.data.pageCache;
 
 import kangc.kkccdb.backend.common.AbstractCacheLru;
+import kangc.kkccdb.backend.common.Codec;
+import kangc.kkccdb.backend.common.MemoryGovernor;
+import kangc.kkccdb.backend.common.RateLimiter;
+import kangc.kkccdb.backend.jfr.FsyncEvent;
+import kangc.kkccdb.backend.jfr.PageFlushEvent;
+import kangc.kkccdb.backend.jfr.PageReadEvent;
 import kangc.kkccdb.backend.manager.data.page.Page;
 import kangc.kkccdb.backend.manager.data.page.PageImpl;
 import kangc.kkccdb.utils.Panic;
 
+import java.io.File;
 import java.io.IOException;
 import java.io.RandomAccessFile;
 import java.nio.ByteBuffer;
 import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Spliterator;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.Consumer;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.LockSupport;
 import java.util.concurrent.locks.ReentrantLock;
 
 public class PageCacheImpl extends AbstractCacheLru<Page> implements PageCache {
 
     private static final int MEM_MIN_LIM = 10;
 
+    // 有前台加载时，预热和备份每次等待的时间
+    private static final long BACKOFF_NANOS = 100_000;
+
+    // 备份每块复制的页数，复制一块时持有fileLock，写页面最多等这么久
+    private static final int BACKUP_CHUNK_PAGES = 64;
+
+    // 备份每块最多为前台加载让路的时间，前台一直很忙时备份也能前进
+    private static final long BACKUP_MAX_BACKOFF_NANOS = 10_000_000;
+
     // 对文件随机访问
     private final RandomAccessFile file;
 
@@ -27,7 +56,18 @@ public class PageCacheImpl extends AbstractCacheLru<Page> implements PageCache {
     // 线程安全的页码计数器，记录当前打开的数据库文件有多少页（数据库文件打开就会计算，新增页面时自增）
     private final AtomicInteger pageNumbers;
 
-    PageCacheImpl(RandomAccessFile file, FileChannel fileChannel, int maxResource) {
+    // 保存热点页面列表的文件
+    private final File hotFile;
+
+    // 直接I/O模式下读写页面用的通道，为null时经过操作系统的页缓存
+    private final DirectIo direct;
+
+    // 正在从文件读页面的前台线程数，大于0时预热和备份让路
+    private final AtomicInteger foregroundLoads;
+    private Thread prewarmThread;
+    private volatile boolean closing;
+
+    PageCacheImpl(RandomAccessFile file, FileChannel fileChannel, int maxResource, File hotFile, DirectIo direct) {
         super(maxResource);
         if (maxResource < MEM_MIN_LIM) {
             Panic.panic(new RuntimeException("Memory too small!"));
@@ -43,6 +83,9 @@ public class PageCacheImpl extends AbstractCacheLru<Page> implements PageCache {
         this.fileLock = new ReentrantLock();
         // 计算页码
         this.pageNumbers = new AtomicInteger((int) length / PAGE_SIZE);
+        this.hotFile = hotFile;
+        this.direct = direct;
+        this.foregroundLoads = new AtomicInteger();
     }
 
     /**
@@ -59,6 +102,20 @@ public class PageCacheImpl extends AbstractCacheLru<Page> implements PageCache {
         return pageNum;
     }
 
+    public int appendPage(byte[] initData) {
+        int pageNum = pageNumbers.incrementAndGet();
+        write(new PageImpl(pageNum, initData, null), false);
+        return pageNum;
+    }
+
+    public void force() {
+        try {
+            FsyncEvent.force(fileChannel, true, "page");
+        } catch (IOException e) {
+            Panic.panic(e);
+        }
+    }
+
     /**
      * 根据页号获取页，若页面不在缓存，通过getForCache()加载文件到缓存
      */
@@ -66,35 +123,102 @@ public class PageCacheImpl extends AbstractCacheLru<Page> implements PageCache {
         return get(pageNum);
     }
 
+    public Page lockPage(int pgno) throws Exception {
+        while (true) {
+            Page pg = get(pgno);
+            pg.lock();
+            if (!pg.isReleased()) {
+                return pg;
+            }
+            // 加锁前刚被淘汰，重新从缓存获取
+            pg.unlock();
+        }
+    }
+
     /**
      * 根据页号（key），从文件获取页面数据，包裹成Page返回
      */
     @Override
     protected Page getForCache(long key) throws Exception {
+        foregroundLoads.incrementAndGet();
+        try {
+            return readPage(key);
+        } finally {
+            foregroundLoads.decrementAndGet();
+        }
+    }
+
+    private Page readPage(long key) {
         // 根据页号计算在文件中的偏移量
         int pageNum = (int) key;
         long offset = PageCacheImpl.pageOffset(pageNum);
 
-        ByteBuffer buf = ByteBuffer.allocate(PAGE_SIZE);
-        fileLock.lock();
+        PageReadEvent event = new PageReadEvent();
+        event.begin();
+        byte[] data = new byte[PAGE_SIZE];
         try {
-            fileChannel.position(offset);
-            fileChannel.read(buf);
+            if (direct != null) {
+                direct.read(offset, data);
+            } else {
+                // 按位置读，不影响文件通道的position，不需要fileLock，不会排在写页面或预热线程的后面
+                ByteBuffer buf = ByteBuffer.wrap(data);
+                while (buf.hasRemaining()) {
+                    if (fileChannel.read(buf, offset + buf.position()) < 0) {
+                        break;
+                    }
+                }
+            }
         } catch (IOException e) {
             Panic.panic(e);
         }
-        fileLock.unlock();
-        return new PageImpl(pageNum, buf.array(), this);
+        event.end();
+        if (event.shouldCommit()) {
+            event.pageNumber = pageNum;
+            event.bytes = PAGE_SIZE;
+            event.commit();
+        }
+        return new PageImpl(pageNum, data, this);
     }
 
     /**
      * 页面从缓存删去之前调用，持久化脏页到文件
+     * 在页锁内写回并标记为已淘汰，正在修改页面的线程会先完成修改
      */
     @Override
     protected void releaseForCache(Page pg) {
-        if (pg.isDirty()) {
-            flush(pg);
-            pg.setDirty(false);
+        pg.lock();
+        try {
+            if (pg.isDirty()) {
+                flush(pg);
+                pg.setDirty(false);
+            }
+            pg.setReleased(true);
+        } finally {
+            pg.unlock();
+        }
+    }
+
+    /**
+     * 缩容时淘汰一批页面：脏页只写入文件，整批写完后刷一次盘
+     */
+    @Override
+    protected void releaseBatchForCache(List<Page> pages) {
+        boolean wrote = false;
+        for (Page pg : pages) {
+            pg.lock();
+            try {
+                if (pg.isDirty()) {
+                    write(pg, false);
+                    pg.setDirty(false);
+                    wrote = true;
+                }
+                pg.setReleased(true);
+            } finally {
+                pg.unlock();
+            }
+        }
+        if (wrote) {
+            force();
         }
     }
 
@@ -109,28 +233,137 @@ public class PageCacheImpl extends AbstractCacheLru<Page> implements PageCache {
         flush(pg);
     }
 
+    public Spliterator<Page> scan(int chunkPages) {
+        return new PageScanSpliterator(this, 1, getPageNumber() + 1, chunkPages);
+    }
+
+    public void parallelScan(ForkJoinPool pool, int chunkPages, Consumer<Page> consumer) {
+        Spliterator<Page> pages = scan(chunkPages);
+        // 每个线程分到几个任务就够了，切得太碎只会多分配读缓冲区
+        long threshold = Math.max(chunkPages, pages.estimateSize() / (pool.getParallelism() * 4L));
+        pool.invoke(new ScanTask(pages, threshold, consumer));
+    }
+
+    /**
+     * 不断对半切分，直到不超过threshold页，再顺序遍历
+     */
+    private static class ScanTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final Spliterator<Page> pages;
+        private final long threshold;
+        private final Consumer<Page> consumer;
+
+        ScanTask(Spliterator<Page> pages, long threshold, Consumer<Page> consumer) {
+            this.pages = pages;
+            this.threshold = threshold;
+            this.consumer = consumer;
+        }
+
+        @Override
+        protected void compute() {
+            List<ScanTask> forked = new ArrayList<>();
+            Spliterator<Page> prefix;
+            while (pages.estimateSize() > threshold && (prefix = pages.trySplit()) != null) {
+                ScanTask task = new ScanTask(prefix, threshold, consumer);
+                task.fork();
+                forked.add(task);
+            }
+            pages.forEachRemaining(consumer);
+            for (ScanTask task : forked) {
+                task.join();
+            }
+        }
+    }
+
+    /**
+     * 读取[from, to)的页面，缓存中有的用缓存中的对象，其余用一次顺序读读入buf，不放入缓存
+     * 先查缓存再读文件：查缓存时不在缓存中的页面，文件中的数据不会比它被淘汰时旧
+     * 整块在fileLock内读，不会读到写了一半的页面；读完后再查一次缓存，期间被加载的页面用缓存中的对象
+     *
+     * @param buf 至少能放下to - from页，由调用方复用
+     */
+    Page[] readPages(int from, int to, ByteBuffer buf) {
+        Page[] pages = new Page[to - from];
+        boolean allCached = true;
+        for (int i = 0; i < pages.length; i++) {
+            pages[i] = peek(from + i);
+            allCached &= pages[i] != null;
+        }
+        if (allCached) {
+            return pages;
+        }
+
+        buf.clear().limit(pages.length * PAGE_SIZE);
+        long offset = pageOffset(from);
+        fileLock.lock();
+        try {
+            // 按位置读，不影响文件通道的position
+            while (buf.hasRemaining()) {
+                if (fileChannel.read(buf, offset + buf.position()) < 0) {
+                    break;
+                }
+            }
+        } catch (IOException e) {
+            Panic.panic(e);
+        } finally {
+            fileLock.unlock();
+        }
+        for (int i = 0; i < pages.length; i++) {
+            if (pages[i] == null) {
+                pages[i] = peek(from + i);
+            }
+            if (pages[i] == null) {
+                byte[] data = new byte[PAGE_SIZE];
+                buf.position(i * PAGE_SIZE);
+                buf.get(data);
+                pages[i] = new PageImpl(from + i, data, null);
+            }
+        }
+        return pages;
+    }
+
     /**
      * 把页面数据写入到文件，并强制同步到磁盘
      */
     private void flush(Page pg) {
+        write(pg, true);
+    }
+
+    private void write(Page pg, boolean force) {
         // 根据页号计算当前页在文件中的偏移量
         int pageNum = pg.getPageNumber();
         long offset = pageOffset(pageNum);
 
+        PageFlushEvent event = new PageFlushEvent();
+        event.begin();
         fileLock.lock();
         try {
-            // 将页面的字节数组包装成ByteBuffer，避免复制
-            ByteBuffer buf = ByteBuffer.wrap(pg.getData());
-            // 定位页面位置
-            fileChannel.position(offset);
-            fileChannel.write(buf);
+            if (direct != null) {
+                direct.write(offset, pg.getData());
+            } else {
+                // 将页面的字节数组包装成ByteBuffer，避免复制
+                ByteBuffer buf = ByteBuffer.wrap(pg.getData());
+                // 定位页面位置
+                fileChannel.position(offset);
+                fileChannel.write(buf);
+            }
             // 强制刷盘，保证写入数据不丢失
-            fileChannel.force(true);
+            if (force) {
+                FsyncEvent.force(fileChannel, true, "page");
+            }
         } catch (IOException e) {
             Panic.panic(e);
         } finally {
             fileLock.unlock();
         }
+        event.end();
+        if (event.shouldCommit()) {
+            event.pageNumber = pageNum;
+            event.bytes = PAGE_SIZE;
+            event.forced = force;
+            event.commit();
+        }
     }
 
     /**
@@ -147,12 +380,164 @@ public class PageCacheImpl extends AbstractCacheLru<Page> implements PageCache {
     }
 
     /**
-     * 关闭缓存、文件通道和文件
+     * 把缓存中的页号按最近访问的顺序写入热点页面文件：[count 4][pgno 4]...
+     * 先写临时文件再改名，崩溃时留下的要么是旧列表，要么是新列表。列表只是提示，不刷盘
+     * 缓存是空的时候（比如打开后马上关闭）保留旧列表
+     */
+    public void saveHotPages() {
+        long[] keys = recentKeys();
+        if (keys.length == 0) {
+            return;
+        }
+        byte[] raw = new byte[4 + keys.length * 4];
+        Codec.putInt(raw, 0, keys.length);
+        for (int i = 0; i < keys.length; i++) {
+            Codec.putInt(raw, 4 + i * 4, (int) keys[i]);
+        }
+        Path tmp = Paths.get(hotFile.getPath() + ".tmp");
+        try {
+            Files.write(tmp, raw);
+            Files.move(tmp, hotFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            Panic.panic(e);
+        }
+    }
+
+    /**
+     * 读取上次保存的热点页面，取最近访问的至多capacity()页，过滤掉超出文件的页号，按页号排序
+     */
+    int[] loadHotPages() {
+        if (!hotFile.exists()) {
+            return new int[0];
+        }
+        byte[] raw;
+        try {
+            raw = Files.readAllBytes(hotFile.toPath());
+        } catch (IOException e) {
+            // 列表只是提示，读不了就不预热
+            return new int[0];
+        }
+        if (raw.length < 4) {
+            return new int[0];
+        }
+        int count = Math.min(Codec.getInt(raw, 0), (raw.length - 4) / 4);
+        count = Math.min(count, capacity());
+        int maxPgno = getPageNumber();
+        int[] pages = new int[count];
+        int n = 0;
+        for (int i = 0; i < count; i++) {
+            int pgno = Codec.getInt(raw, 4 + i * 4);
+            if (pgno >= 1 && pgno <= maxPgno) {
+                pages[n++] = pgno;
+            }
+        }
+        pages = Arrays.copyOf(pages, n);
+        Arrays.sort(pages);
+        return pages;
+    }
+
+    public void prewarm() {
+        int[] pages = loadHotPages();
+        if (pages.length == 0) {
+            return;
+        }
+        prewarmThread = new Thread(() -> prewarm(pages), "kkccdb-prewarm");
+        prewarmThread.setDaemon(true);
+        prewarmThread.setPriority(Thread.MIN_PRIORITY);
+        prewarmThread.start();
+    }
+
+    /**
+     * 按页号顺序读入页面，文件是顺序读的；有前台线程在读文件时先等待
+     */
+    private void prewarm(int[] pages) {
+        try {
+            for (int pgno : pages) {
+                while (foregroundLoads.get() > 0 && !closing) {
+                    LockSupport.parkNanos(BACKOFF_NANOS);
+                }
+                if (closing || !preload(pgno, this::readPage)) {
+                    return;
+                }
+            }
+        } catch (Exception e) {
+            Panic.panic(e);
+        }
+    }
+
+    /**
+     * 按块把文件中的页面复制到target，块之间限速并为前台加载让路
+     * 每块在fileLock内复制，不会复制到写了一半的页面；块与块之间不是同一时刻的状态
+     */
+    public long backup(WritableByteChannel target, RateLimiter limiter) throws IOException {
+        long end = pageOffset(pageNumbers.get() + 1);
+        long position = 0;
+        while (position < end) {
+            long len = Math.min((long) BACKUP_CHUNK_PAGES * PAGE_SIZE, end - position);
+            limiter.acquire(len);
+            long deadline = System.nanoTime() + BACKUP_MAX_BACKOFF_NANOS;
+            while (foregroundLoads.get() > 0 && System.nanoTime() < deadline) {
+                LockSupport.parkNanos(BACKOFF_NANOS);
+            }
+            long copied = 0;
+            fileLock.lock();
+            try {
+                // transferTo按位置读，不修改通道的position
+                while (copied < len) {
+                    long n = fileChannel.transferTo(position + copied, len - copied, target);
+                    if (n <= 0) {
+                        break;
+                    }
+                    copied += n;
+                }
+            } finally {
+                fileLock.unlock();
+            }
+            position += copied;
+            if (copied < len) {
+                // 页号已分配、页面还没写入文件，由日志恢复
+                break;
+            }
+        }
+        return position;
+    }
+
+    public void register(MemoryGovernor governor) {
+        String name = hotFile.getName();
+        governor.register(name.substring(0, name.length() - HOT_SUFFIX.length()), this, PAGE_SIZE,
+                (long) MEM_MIN_LIM * PAGE_SIZE);
+    }
+
+    /**
+     * 等待预热结束，没有预热时立即返回
+     */
+    void awaitPrewarm() throws InterruptedException {
+        if (prewarmThread != null) {
+            prewarmThread.join();
+        }
+    }
+
+    boolean isCached(int pgno) {
+        return peek(pgno) != null;
+    }
+
+    /**
+     * 停止预热，保存热点页面，再关闭缓存、文件通道和文件
      */
     @Override
     public void close() {
+        closing = true;
+        try {
+            awaitPrewarm();
+        } catch (InterruptedException e) {
+            Panic.panic(e);
+        }
+        saveHotPages();
         super.close();
         try {
+            if (direct != null) {
+                direct.close();
+            }
             fileChannel.close();
             file.close();
         } catch (IOException e) {
@@ -160,6 +545,13 @@ public class PageCacheImpl extends AbstractCacheLru<Page> implements PageCache {
         }
     }
 
+    /**
+     * 是否在用直接I/O读写页面
+     */
+    public boolean isDirect() {
+        return direct != null;
+    }
+
     /**
      * 当前已用最大页号
      */
@@ -0,0 +1,80 @@
+package kangc.kkccdb.backend.manager.data.pageCache;
+
+import kangc.kkccdb.backend.manager.data.page.Page;
+
+import java.nio.ByteBuffer;
+import java.util.Spliterator;
+import java.util.function.Consumer;
+
+/**
+ * 按页号顺序遍历[from, to)的页面，每次从文件顺序读入一整块（chunkPages页）
+ * trySplit()按块的边界对半切分，适合交给ForkJoinPool并行处理
+ */
+class PageScanSpliterator implements Spliterator<Page> {
+
+    private final PageCacheImpl pc;
+    private final int chunkPages;
+
+    // 下一个要读入的页号、结束页号（不含）
+    private int next;
+    private final int to;
+
+    // 已读入、还未交给consumer的页面
+    private Page[] chunk;
+    private int chunkPos;
+
+    // 读文件用的直接缓冲区，第一次读时分配，之后复用
+    private ByteBuffer buf;
+
+    PageScanSpliterator(PageCacheImpl pc, int from, int to, int chunkPages) {
+        this.pc = pc;
+        this.next = from;
+        this.to = to;
+        this.chunkPages = chunkPages;
+    }
+
+    @Override
+    public boolean tryAdvance(Consumer<? super Page> action) {
+        if (chunk == null || chunkPos == chunk.length) {
+            if (next >= to) {
+                return false;
+            }
+            int end = Math.min(to, next + chunkPages);
+            if (buf == null) {
+                buf = ByteBuffer.allocateDirect(chunkPages * PageCache.PAGE_SIZE);
+            }
+            chunk = pc.readPages(next, end, buf);
+            chunkPos = 0;
+            next = end;
+        }
+        action.accept(chunk[chunkPos++]);
+        return true;
+    }
+
+    @Override
+    public Spliterator<Page> trySplit() {
+        if (chunk != null && chunkPos < chunk.length) {
+            // 当前块还没遍历完，不切分
+            return null;
+        }
+        int chunks = (to - next + chunkPages - 1) / chunkPages;
+        if (chunks < 2) {
+            return null;
+        }
+        int mid = next + chunks / 2 * chunkPages;
+        PageScanSpliterator prefix = new PageScanSpliterator(pc, next, mid, chunkPages);
+        next = mid;
+        return prefix;
+    }
+
+    @Override
+    public long estimateSize() {
+        long buffered = chunk == null ? 0 : chunk.length - chunkPos;
+        return buffered + Math.max(0, to - next);
+    }
+
+    @Override
+    public int characteristics() {
+        return ORDERED | DISTINCT | NONNULL | SIZED | SUBSIZED;
+    }
+}
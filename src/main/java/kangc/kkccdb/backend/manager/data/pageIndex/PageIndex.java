@@ -0,0 +1,67 @@
+package kangc.kkccdb.backend.manager.data.pageIndex;
+
+import kangc.kkccdb.backend.manager.data.pageCache.PageCache;
+
+import java.util.ArrayDeque;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 页面空闲空间索引
+ * <p>
+ * 把一页的空间划分成INTERVALS_NO个区间，每个区间一个桶，页按剩余空间放入对应的桶。
+ * 插入时从能容纳数据的最小桶开始往上找，最多看INTERVALS_NO + 1个桶，不用扫描页面。
+ * 被选中的页会从索引中取出，插入完成后再按新的剩余空间放回，同一页同时只会有一个插入者。
+ */
+public class PageIndex {
+
+    // 将一页划成40个区间
+    private static final int INTERVALS_NO = 40;
+    private static final int THRESHOLD = PageCache.PAGE_SIZE / INTERVALS_NO;
+
+    private final Lock lock;
+    private final ArrayDeque<PageInfo>[] lists;
+
+    // 不能创建泛型数组，只能先建ArrayDeque[]再转换
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    public PageIndex() {
+        lock = new ReentrantLock();
+        lists = new ArrayDeque[INTERVALS_NO + 1];
+        for (int i = 0; i <= INTERVALS_NO; i++) {
+            lists[i] = new ArrayDeque<>();
+        }
+    }
+
+    /**
+     * 按剩余空间把页放入对应的桶
+     */
+    public void add(int pgno, int freeSpace) {
+        lock.lock();
+        try {
+            int number = Math.min(freeSpace / THRESHOLD, INTERVALS_NO);
+            lists[number].addLast(new PageInfo(pgno, freeSpace));
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 取出一个剩余空间不小于spaceSize的页，没有时返回null
+     */
+    public PageInfo select(int spaceSize) {
+        lock.lock();
+        try {
+            // 向上取整，保证桶里的页一定放得下
+            int number = (spaceSize + THRESHOLD - 1) / THRESHOLD;
+            while (number <= INTERVALS_NO) {
+                if (!lists[number].isEmpty()) {
+                    return lists[number].pollFirst();
+                }
+                number++;
+            }
+            return null;
+        } finally {
+            lock.unlock();
+        }
+    }
+}
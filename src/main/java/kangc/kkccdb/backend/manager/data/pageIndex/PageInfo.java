@@ -0,0 +1,14 @@
+package kangc.kkccdb.backend.manager.data.pageIndex;
+
+public class PageInfo {
+
+    public final int pgno;
+
+    // 放入索引时的剩余空间
+    public final int freeSpace;
+
+    public PageInfo(int pgno, int freeSpace) {
+        this.pgno = pgno;
+        this.freeSpace = freeSpace;
+    }
+}
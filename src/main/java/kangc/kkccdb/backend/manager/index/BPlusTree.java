@@ -0,0 +1,391 @@
+package kangc.kkccdb.backend.manager.index;
+
+import kangc.kkccdb.backend.common.Codec;
+import kangc.kkccdb.backend.manager.data.page.Page;
+import kangc.kkccdb.backend.manager.data.pageCache.PageCache;
+import kangc.kkccdb.utils.Panic;
+
+import java.lang.invoke.VarHandle;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * B+树索引，key和value都是long，key唯一
+ * <p>
+ * 并发控制使用乐观锁耦合（Optimistic Lock Coupling）：每个节点有一个版本号，
+ * 读者不加锁，读完节点后检查版本号没变才使用读到的内容，变了就从根节点重新开始；
+ * 写者把版本号CAS成加锁状态再修改，解锁时版本号加一。读者之间完全不互相影响。
+ * <p>
+ * 插入时在下降过程中分裂满节点，因此分裂只需要锁住当前节点和父节点，不会向上传播。
+ * <p>
+ * 元数据页只记录根节点页号：[Root 4B]
+ */
+public class BPlusTree {
+
+    // 查找不到key时的返回值
+    public static final long NOT_FOUND = -1;
+
+    // 版本号的加锁位
+    private static final long LOCKED = 2;
+
+    private final PageCache pc;
+    // 元数据页可能被淘汰，只记页号，分裂根节点时重新获取
+    private final int metaPgno;
+    private volatile int rootPgno;
+
+    // 页号 -> 节点版本号，版本号不随页面淘汰而丢失
+    private final ConcurrentHashMap<Integer, AtomicLong> versions;
+
+    private BPlusTree(PageCache pc, int metaPgno, int rootPgno) {
+        this.pc = pc;
+        this.metaPgno = metaPgno;
+        this.rootPgno = rootPgno;
+        versions = new ConcurrentHashMap<>();
+    }
+
+    /**
+     * 创建一棵空树，返回元数据页的页号
+     */
+    public static int create(PageCache pc) {
+        int root = pc.newPage(Node.newLeaf());
+        return pc.newPage(metaRaw(root));
+    }
+
+    static byte[] metaRaw(int root) {
+        byte[] meta = new byte[PageCache.PAGE_SIZE];
+        Codec.putInt(meta, 0, root);
+        return meta;
+    }
+
+    /**
+     * 通过元数据页加载一棵树
+     */
+    public static BPlusTree load(PageCache pc, int metaPgno) {
+        Page meta = null;
+        try {
+            meta = pc.getPage(metaPgno);
+        } catch (Exception e) {
+            Panic.panic(e);
+        }
+        return new BPlusTree(pc, metaPgno, Codec.getInt(meta.getData(), 0));
+    }
+
+    /**
+     * 点查询，不存在返回NOT_FOUND
+     */
+    public long search(long key) {
+        restart:
+        while (true) {
+            int pgno = rootPgno;
+            AtomicLong version = version(pgno);
+            long v = readLock(version);
+            if (v < 0 || pgno != rootPgno) {
+                continue;
+            }
+            while (true) {
+                byte[] d = page(pgno).getData();
+                if (Node.isLeaf(d)) {
+                    int i = Node.find(d, key);
+                    long value = i >= 0 ? Node.value(d, i) : NOT_FOUND;
+                    if (!validate(version, v)) {
+                        continue restart;
+                    }
+                    return value;
+                }
+                int child = Node.childFor(d, key);
+                if (!validate(version, v)) {
+                    continue restart;
+                }
+                AtomicLong childVersion = version(child);
+                long cv = readLock(childVersion);
+                if (cv < 0 || !validate(version, v)) {
+                    continue restart;
+                }
+                pgno = child;
+                version = childVersion;
+                v = cv;
+            }
+        }
+    }
+
+    /**
+     * 范围查询，返回key在[lo, hi]中的所有value，按key升序
+     * 沿叶子节点的右兄弟链扫描，某个叶子校验失败时，从根节点重新定位到已扫描的最大key之后
+     */
+    public List<Long> searchRange(long lo, long hi) {
+        List<Long> result = new ArrayList<>();
+        long cursor = lo;
+        restart:
+        while (cursor <= hi) {
+            int pgno = rootPgno;
+            AtomicLong version = version(pgno);
+            long v = readLock(version);
+            if (v < 0 || pgno != rootPgno) {
+                continue;
+            }
+            while (true) {
+                byte[] d = page(pgno).getData();
+                if (!Node.isLeaf(d)) {
+                    int child = Node.childFor(d, cursor);
+                    if (!validate(version, v)) {
+                        continue restart;
+                    }
+                    AtomicLong childVersion = version(child);
+                    long cv = readLock(childVersion);
+                    if (cv < 0 || !validate(version, v)) {
+                        continue restart;
+                    }
+                    pgno = child;
+                    version = childVersion;
+                    v = cv;
+                    continue;
+                }
+
+                int scanned = result.size();
+                int n = Node.count(d);
+                boolean done = false;
+                for (int i = Node.lowerBound(d, cursor); i < n; i++) {
+                    if (Node.key(d, i) > hi) {
+                        done = true;
+                        break;
+                    }
+                    result.add(Node.value(d, i));
+                }
+                long last = n > 0 ? Node.key(d, n - 1) : cursor - 1;
+                int next = Node.link(d);
+                if (!validate(version, v)) {
+                    // 丢弃这个叶子上读到的数据
+                    result.subList(scanned, result.size()).clear();
+                    continue restart;
+                }
+                if (done || next == 0 || last == Long.MAX_VALUE) {
+                    return result;
+                }
+                cursor = Math.max(cursor, last + 1);
+
+                AtomicLong nextVersion = version(next);
+                long nv = readLock(nextVersion);
+                if (nv < 0) {
+                    continue restart;
+                }
+                pgno = next;
+                version = nextVersion;
+                v = nv;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * 插入，key已存在时覆盖value
+     */
+    public void insert(long key, long value) {
+        restart:
+        while (true) {
+            int pgno = rootPgno;
+            AtomicLong version = version(pgno);
+            long v = readLock(version);
+            if (v < 0 || pgno != rootPgno) {
+                continue;
+            }
+            Page page = page(pgno);
+
+            Page parent = null;
+            AtomicLong parentVersion = null;
+            long pv = 0;
+
+            while (true) {
+                byte[] d = page.getData();
+                if (Node.isLeaf(d)) {
+                    int i = Node.find(d, key);
+                    if (i < 0 && Node.count(d) >= Node.MAX_COUNT) {
+                        split(parent, parentVersion, pv, page, version, v);
+                        continue restart;
+                    }
+                    if (!upgrade(version, v)) {
+                        continue restart;
+                    }
+                    if (!lock(page)) {
+                        writeUnlock(version);
+                        continue restart;
+                    }
+                    try {
+                        // 版本号从读取到加锁都没变，i仍然有效
+                        if (i >= 0) {
+                            Node.setValue(d, i, value);
+                        } else {
+                            Node.insertAt(d, -i - 1, key, value);
+                        }
+                        page.setDirty(true);
+                    } finally {
+                        page.unlock();
+                        writeUnlock(version);
+                    }
+                    return;
+                }
+
+                if (Node.count(d) >= Node.MAX_COUNT) {
+                    split(parent, parentVersion, pv, page, version, v);
+                    continue restart;
+                }
+                int child = Node.childFor(d, key);
+                if (!validate(version, v)) {
+                    continue restart;
+                }
+                AtomicLong childVersion = version(child);
+                long cv = readLock(childVersion);
+                if (cv < 0 || !validate(version, v)) {
+                    continue restart;
+                }
+                parent = page;
+                parentVersion = version;
+                pv = v;
+                page = page(child);
+                version = childVersion;
+                v = cv;
+            }
+        }
+    }
+
+    /**
+     * 分裂满节点node，分隔key插入父节点；node是根节点时（parent为null）创建新的根节点
+     * 任何一个版本号校验失败都直接放弃，由调用方重新开始
+     * 分裂根节点要修改元数据页，在加任何页锁之前获取，持有页锁时不能调用getPage（可能要淘汰页面、加页锁）
+     */
+    private void split(Page parent, AtomicLong parentVersion, long pv, Page node, AtomicLong version, long v) {
+        Page meta = parent == null ? page(metaPgno) : null;
+        if (parentVersion != null && !upgrade(parentVersion, pv)) {
+            return;
+        }
+        if (!upgrade(version, v)) {
+            if (parentVersion != null) writeUnlock(parentVersion);
+            return;
+        }
+        if (parent == null && node.getPageNumber() != rootPgno) {
+            writeUnlock(version);
+            return;
+        }
+        if (parent != null && !lock(parent)) {
+            writeUnlock(version);
+            writeUnlock(parentVersion);
+            return;
+        }
+        if (!lock(node)) {
+            if (parent != null) {
+                parent.unlock();
+                writeUnlock(parentVersion);
+            }
+            writeUnlock(version);
+            return;
+        }
+        if (meta != null && !lock(meta)) {
+            // 元数据页在获取之后被淘汰了
+            node.unlock();
+            writeUnlock(version);
+            return;
+        }
+
+        try {
+            byte[] d = node.getData();
+            long sep = Node.splitKey(d);
+            // 新节点先落盘，再让其它节点指向它
+            int right = pc.newPage(Node.split(d));
+            if (Node.isLeaf(d)) {
+                Node.setLink(d, right);
+            }
+            node.setDirty(true);
+
+            if (parent != null) {
+                byte[] pd = parent.getData();
+                Node.insertAt(pd, Node.upperBound(pd, sep), sep, right);
+                parent.setDirty(true);
+            } else {
+                int root = pc.newPage(Node.newRoot(node.getPageNumber(), sep, right));
+                updateRoot(meta, root);
+            }
+        } finally {
+            if (meta != null) {
+                meta.unlock();
+            }
+            node.unlock();
+            writeUnlock(version);
+            if (parent != null) {
+                parent.unlock();
+                writeUnlock(parentVersion);
+            }
+        }
+    }
+
+    /**
+     * 调用方持有元数据页的页锁
+     */
+    private void updateRoot(Page meta, int root) {
+        Codec.putInt(meta.getData(), 0, root);
+        pc.flushPage(meta);
+        rootPgno = root;
+    }
+
+    private Page page(int pgno) {
+        Page pg = null;
+        try {
+            pg = pc.getPage(pgno);
+        } catch (Exception e) {
+            Panic.panic(e);
+        }
+        return pg;
+    }
+
+    /**
+     * 给页面加页锁，页面加锁前已被淘汰时返回false，此时修改会丢失，需要重新获取页面
+     */
+    private static boolean lock(Page pg) {
+        pg.lock();
+        if (pg.isReleased()) {
+            pg.unlock();
+            return false;
+        }
+        return true;
+    }
+
+    private AtomicLong version(int pgno) {
+        AtomicLong version = versions.get(pgno);
+        if (version == null) {
+            version = versions.computeIfAbsent(pgno, k -> new AtomicLong());
+        }
+        return version;
+    }
+
+    /**
+     * 读取版本号，节点被写锁住时返回-1
+     */
+    private static long readLock(AtomicLong version) {
+        long v = version.get();
+        if ((v & LOCKED) != 0) {
+            Thread.onSpinWait();
+            return -1;
+        }
+        return v;
+    }
+
+    /**
+     * 读完节点后检查版本号没变
+     * 节点数据是普通读，acquire屏障保证这些读不会被重排到版本号的重新读取之后
+     */
+    private static boolean validate(AtomicLong version, long v) {
+        VarHandle.acquireFence();
+        return version.get() == v;
+    }
+
+    /**
+     * 版本号仍为v时加写锁
+     */
+    private static boolean upgrade(AtomicLong version, long v) {
+        return version.compareAndSet(v, v + LOCKED);
+    }
+
+    private static void writeUnlock(AtomicLong version) {
+        version.addAndGet(LOCKED);
+    }
+}
@@ -0,0 +1,117 @@
+package kangc.kkccdb.backend.manager.index;
+
+import kangc.kkccdb.backend.manager.data.pageCache.PageCache;
+import kangc.kkccdb.utils.Errors;
+import kangc.kkccdb.utils.Panic;
+
+import java.util.Arrays;
+
+/**
+ * 从有序的key流自底向上构建B+树
+ * <p>
+ * 叶子节点按fillFactor填满后顺序追加到文件末尾，叶子连续存放，右兄弟就是下一页；
+ * 所有叶子写完后，用每个叶子的第一个key和页号逐层构建内部节点，每层也是顺序追加。
+ * 写入时都不刷盘，finish()最后刷盘一次，整个过程不经过页面缓存，也没有分裂。
+ * <p>
+ * 加载期间不能有其它线程在同一个文件中创建页面。
+ */
+public class BulkLoader {
+
+    private final PageCache pc;
+
+    // 每个节点按填充因子计算的最大entry数，留出的空间给之后的插入使用
+    private final int capacity;
+
+    // 正在填充的叶子
+    private byte[] leaf;
+    private int leafCount;
+
+    // 已写入的本层节点：第一个key、页号
+    private long[] firstKeys;
+    private int[] pgnos;
+    private int size;
+
+    private long lastKey;
+    private boolean empty;
+
+    public BulkLoader(PageCache pc, double fillFactor) {
+        if (!(fillFactor > 0 && fillFactor <= 1)) {
+            throw Errors.InvalidFillFactorException;
+        }
+        this.pc = pc;
+        capacity = Math.max(1, (int) (Node.MAX_COUNT * fillFactor));
+        leaf = Node.newLeaf();
+        firstKeys = new long[64];
+        pgnos = new int[64];
+        empty = true;
+    }
+
+    /**
+     * 追加一个entry，key必须严格递增
+     */
+    public void add(long key, long value) {
+        if (!empty && key <= lastKey) {
+            throw Errors.UnsortedKeyException;
+        }
+        if (leafCount == capacity) {
+            // 当前叶子已满，后面还有数据，它的右兄弟就是紧接着写入的下一页
+            writeLeaf(true);
+        }
+        Node.insertAt(leaf, leafCount++, key, value);
+        lastKey = key;
+        empty = false;
+    }
+
+    /**
+     * 写入最后一个叶子和所有内部节点，刷盘，返回元数据页的页号，之后可以用BPlusTree.load()加载
+     */
+    public int finish() {
+        writeLeaf(false);
+        while (size > 1) {
+            buildLevel();
+        }
+        int meta = pc.appendPage(BPlusTree.metaRaw(pgnos[0]));
+        pc.force();
+        return meta;
+    }
+
+    private void writeLeaf(boolean hasNext) {
+        int expected = pc.getPageNumber() + 1;
+        Node.setLink(leaf, hasNext ? expected + 1 : 0);
+        int pgno = pc.appendPage(leaf);
+        if (pgno != expected) {
+            Panic.panic(new RuntimeException("批量加载期间有其它页面写入!"));
+        }
+        record(leafCount > 0 ? Node.key(leaf, 0) : 0, pgno);
+        leaf = Node.newLeaf();
+        leafCount = 0;
+    }
+
+    /**
+     * 用本层节点构建上一层，第一个孩子作为最左孩子，其余孩子以它们的第一个key为分隔key
+     */
+    private void buildLevel() {
+        long[] keys = Arrays.copyOf(firstKeys, size);
+        int[] children = Arrays.copyOf(pgnos, size);
+        int n = size;
+        size = 0;
+        for (int i = 0; i < n; ) {
+            long firstKey = keys[i];
+            byte[] inner = Node.newInner(children[i++]);
+            for (int count = 0; count < capacity && i < n; count++, i++) {
+                Node.insertAt(inner, count, keys[i], children[i]);
+            }
+            record(firstKey, pc.appendPage(inner));
+        }
+    }
+
+    private void record(long firstKey, int pgno) {
+        if (size == pgnos.length) {
+            firstKeys = Arrays.copyOf(firstKeys, size << 1);
+            pgnos = Arrays.copyOf(pgnos, size << 1);
+        }
+        firstKeys[size] = firstKey;
+        pgnos[size] = pgno;
+        size++;
+    }
+}
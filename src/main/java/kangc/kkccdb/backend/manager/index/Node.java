@@ -0,0 +1,169 @@
+package kangc.kkccdb.backend.manager.index;
+
+import kangc.kkccdb.backend.common.Codec;
+import kangc.kkccdb.backend.manager.data.pageCache.PageCache;
+
+/**
+ * B+树节点，一个节点占一页，直接读写页面的字节数组
+ * <p>
+ * [IsLeaf 1B][Count 2B][Link 4B][Key0 8B][Value0 8B][Key1][Value1]...
+ * 叶子节点：Link是右兄弟的页号（0表示没有），Value是数据
+ * 内部节点：Link是最左孩子的页号，Value是孩子页号，孩子中的key都不小于对应的Key
+ * <p>
+ * 乐观读时页面可能正被修改，读到的Count要截断到合法范围，读出的内容校验版本后才能使用
+ */
+class Node {
+
+    private static final int OF_LEAF = 0;
+    private static final int OF_COUNT = OF_LEAF + 1;
+    private static final int OF_LINK = OF_COUNT + 2;
+    private static final int OF_ENTRIES = OF_LINK + 4;
+    private static final int ENTRY_SIZE = 16;
+
+    // 一个节点最多的entry数
+    static final int MAX_COUNT = (PageCache.PAGE_SIZE - OF_ENTRIES) / ENTRY_SIZE;
+
+    static byte[] newLeaf() {
+        byte[] d = new byte[PageCache.PAGE_SIZE];
+        d[OF_LEAF] = 1;
+        return d;
+    }
+
+    static byte[] newInner(int leftmost) {
+        byte[] d = new byte[PageCache.PAGE_SIZE];
+        setLink(d, leftmost);
+        return d;
+    }
+
+    /**
+     * 根节点分裂时新建的根：left、right两个孩子，分隔key为sep
+     */
+    static byte[] newRoot(int left, long sep, int right) {
+        byte[] d = newInner(left);
+        insertAt(d, 0, sep, right);
+        return d;
+    }
+
+    static boolean isLeaf(byte[] d) {
+        return d[OF_LEAF] == 1;
+    }
+
+    static int count(byte[] d) {
+        return Math.min(Codec.getShort(d, OF_COUNT) & 0xFFFF, MAX_COUNT);
+    }
+
+    static int link(byte[] d) {
+        return Codec.getInt(d, OF_LINK);
+    }
+
+    static void setLink(byte[] d, int pgno) {
+        Codec.putInt(d, OF_LINK, pgno);
+    }
+
+    static long key(byte[] d, int i) {
+        return Codec.getLong(d, OF_ENTRIES + i * ENTRY_SIZE);
+    }
+
+    static long value(byte[] d, int i) {
+        return Codec.getLong(d, OF_ENTRIES + i * ENTRY_SIZE + 8);
+    }
+
+    static void setValue(byte[] d, int i, long value) {
+        Codec.putLong(d, OF_ENTRIES + i * ENTRY_SIZE + 8, value);
+    }
+
+    /**
+     * 第一个不小于key的位置
+     */
+    static int lowerBound(byte[] d, long key) {
+        int lo = 0, hi = count(d);
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (key(d, mid) < key) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    /**
+     * 第一个大于key的位置
+     */
+    static int upperBound(byte[] d, long key) {
+        int lo = 0, hi = count(d);
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (key(d, mid) <= key) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    /**
+     * 叶子节点中查找key，找到返回位置，否则返回-(插入位置+1)
+     */
+    static int find(byte[] d, long key) {
+        int i = lowerBound(d, key);
+        if (i < count(d) && key(d, i) == key) {
+            return i;
+        }
+        return -(i + 1);
+    }
+
+    /**
+     * 内部节点中key所在的孩子
+     */
+    static int childFor(byte[] d, long key) {
+        int i = upperBound(d, key);
+        return i == 0 ? link(d) : (int) value(d, i - 1);
+    }
+
+    static void insertAt(byte[] d, int i, long key, long value) {
+        int n = count(d);
+        int from = OF_ENTRIES + i * ENTRY_SIZE;
+        System.arraycopy(d, from, d, from + ENTRY_SIZE, (n - i) * ENTRY_SIZE);
+        Codec.putLong(d, from, key);
+        Codec.putLong(d, from + 8, value);
+        setCount(d, n + 1);
+    }
+
+    /**
+     * 把节点后一半移到新节点，返回新节点的数据
+     * 叶子节点：新节点的第一个key是分隔key，新节点继承原来的右兄弟，调用方再把原节点的右兄弟指向新节点
+     * 内部节点：中间的key上移作为分隔key，它的孩子成为新节点的最左孩子
+     */
+    static byte[] split(byte[] d) {
+        int n = count(d);
+        int mid = n / 2;
+        byte[] right = new byte[PageCache.PAGE_SIZE];
+        right[OF_LEAF] = d[OF_LEAF];
+        int from;
+        if (isLeaf(d)) {
+            setLink(right, link(d));
+            from = mid;
+        } else {
+            setLink(right, (int) value(d, mid));
+            from = mid + 1;
+        }
+        System.arraycopy(d, OF_ENTRIES + from * ENTRY_SIZE, right, OF_ENTRIES, (n - from) * ENTRY_SIZE);
+        setCount(right, n - from);
+        setCount(d, mid);
+        return right;
+    }
+
+    /**
+     * split之前调用，分隔key
+     */
+    static long splitKey(byte[] d) {
+        return key(d, count(d) / 2);
+    }
+
+    private static void setCount(byte[] d, int n) {
+        Codec.putShort(d, OF_COUNT, (short) n);
+    }
+}
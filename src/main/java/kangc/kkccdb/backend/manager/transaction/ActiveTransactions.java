@@ -0,0 +1,282 @@
+package kangc.kkccdb.backend.manager.transaction;
+
+import kangc.kkccdb.utils.Errors;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * 活跃事务表，每个活跃事务占用一个槽位
+ * <p>
+ * 槽位的值：
+ * 大于0：活跃事务的id；
+ * [-2^62, -1]：正在分配事务id，值为-(id下限)，最终分到的id一定不小于这个下限；
+ * 0或小于-2^62：空闲，小于-2^62时低位记录空闲链表中的下一个槽位。
+ * <p>
+ * begin时先占槽位写入id下限，再自增事务id计数器；扫描槽位前先读计数器。
+ * 这样任何不大于计数器的事务id，扫描时要么已经在槽位中，要么槽位中的下限不大于它，要么事务已经结束。
+ * <p>
+ * 每个槽位还记录该事务持有的快照的xmin，用来计算最老的活跃快照，供以后的垃圾回收使用。
+ */
+class ActiveTransactions {
+
+    // 槽位按块分配，每块1024个，最多1024块
+    private static final int CHUNK_SHIFT = 10;
+    private static final int CHUNK_SIZE = 1 << CHUNK_SHIFT;
+    private static final int MAX_CHUNKS = 1 << 10;
+
+    // 每个槽位占两个long：状态、快照xmin
+    private static final int SLOT_LONGS = 2;
+
+    // 空闲槽位的标记，FREE + (下一个空闲槽位+1)
+    private static final long FREE = Long.MIN_VALUE;
+
+    // 正在分配id的槽位，值不小于PENDING_MIN
+    private static final long PENDING_MIN = -(1L << 62);
+
+    // 正在创建快照，xmin还未知，先用最小的事务id占位
+    private static final long XMIN_PENDING = 1;
+
+    private final AtomicReferenceArray<AtomicLongArray> chunks;
+
+    // 分配过的槽位数，扫描只需要看[0, allocated)
+    private final AtomicInteger allocated;
+
+    // 空闲链表头，高32位是版本号（防ABA），低32位是槽位+1，0表示链表为空
+    private final AtomicLong freeHead;
+
+    // 事务id -> 槽位
+    private final ConcurrentHashMap<Long, Integer> slotOf;
+
+    // 每结束一个事务加1，版本不变时快照可以复用
+    private final AtomicLong version;
+
+    // 最近创建的快照
+    private volatile Snapshot cached;
+
+    ActiveTransactions() {
+        chunks = new AtomicReferenceArray<>(MAX_CHUNKS);
+        allocated = new AtomicInteger();
+        freeHead = new AtomicLong();
+        slotOf = new ConcurrentHashMap<>();
+        version = new AtomicLong();
+    }
+
+    /**
+     * 占用一个槽位，标记为正在分配id
+     *
+     * @param floor 即将分配的事务id的下限，必须在自增事务id计数器之前读取
+     * @return 槽位
+     */
+    int claim(long floor) {
+        int slot = popFree();
+        if (slot < 0) {
+            slot = allocate();
+        }
+        AtomicLongArray chunk = chunk(slot);
+        chunk.set(xminIndex(slot), 0);
+        chunk.set(stateIndex(slot), -floor);
+        return slot;
+    }
+
+    /**
+     * 事务id分配失败，释放claim占用的槽位
+     */
+    void abandon(int slot) {
+        chunk(slot).set(xminIndex(slot), 0);
+        pushFree(slot);
+    }
+
+    /**
+     * 事务id分配完成，写入槽位
+     */
+    void publish(int slot, long trxId) {
+        slotOf.put(trxId, slot);
+        chunk(slot).set(stateIndex(slot), trxId);
+    }
+
+    /**
+     * 事务结束（状态已持久化），释放槽位
+     */
+    void remove(long trxId) {
+        Integer slot = slotOf.remove(trxId);
+        if (slot != null) {
+            chunk(slot).set(xminIndex(slot), 0);
+            pushFree(slot);
+            version.incrementAndGet();
+        }
+    }
+
+    boolean contains(long trxId) {
+        return slotOf.containsKey(trxId);
+    }
+
+    /**
+     * 最老的活跃事务id，所有比它小的事务都已经结束
+     *
+     * @param nextTrxId 计数器的下一个值，必须在扫描之前读取；没有活跃事务时返回它
+     */
+    long oldest(long nextTrxId) {
+        return scanOldest(nextTrxId, false);
+    }
+
+    /**
+     * 最老的活跃快照xmin，和最老的活跃事务取较小值
+     * 比它小的已提交事务删除的数据，对任何快照都不再可见
+     *
+     * @param nextTrxId 计数器的下一个值，必须在扫描之前读取
+     */
+    long oldestXmin(long nextTrxId) {
+        return scanOldest(nextTrxId, true);
+    }
+
+    /**
+     * 为事务trxId创建快照，并记录快照的xmin
+     * 自上次创建快照以来没有事务结束时，直接复用上一个快照
+     *
+     * @param trxId   持有快照的事务
+     * @param counter 事务id计数器
+     */
+    Snapshot snapshot(long trxId, AtomicLong counter) {
+        Integer slot = slotOf.get(trxId);
+        if (slot != null) {
+            // 扫描期间先占位，保证计算最老快照的线程不会越过这个快照
+            chunk(slot).set(xminIndex(slot), XMIN_PENDING);
+        }
+        Snapshot snapshot = cached;
+        long v = version.get();
+        if (snapshot == null || snapshot.version != v) {
+            snapshot = build(v, counter.get() + 1);
+            cached = snapshot;
+        }
+        if (slot != null) {
+            chunk(slot).set(xminIndex(slot), snapshot.getXmin());
+        }
+        return snapshot;
+    }
+
+    /**
+     * 扫描所有槽位创建快照。正在分配id且下限小于xmax的槽位，等它分配完再判断
+     */
+    private Snapshot build(long v, long xmax) {
+        long[] active = new long[16];
+        int size = 0;
+        int n = Math.min(allocated.get(), MAX_CHUNKS * CHUNK_SIZE);
+        for (int i = 0; i < n; i++) {
+            AtomicLongArray chunk = chunks.get(i >>> CHUNK_SHIFT);
+            if (chunk == null) {
+                continue;
+            }
+            long state = chunk.get(stateIndex(i));
+            for (int spins = 0; state < 0 && state >= PENDING_MIN && -state < xmax; spins++) {
+                if (spins < 100) {
+                    Thread.onSpinWait();
+                } else {
+                    Thread.yield();
+                }
+                state = chunk.get(stateIndex(i));
+            }
+            if (state > 0 && state < xmax) {
+                if (size == active.length) {
+                    active = Arrays.copyOf(active, size << 1);
+                }
+                active[size++] = state;
+            }
+        }
+        active = Arrays.copyOf(active, size);
+        Arrays.sort(active);
+        long xmin = size > 0 ? active[0] : xmax;
+        return new Snapshot(v, xmin, xmax, active);
+    }
+
+    private long scanOldest(long nextTrxId, boolean withSnapshots) {
+        long min = nextTrxId;
+        int n = Math.min(allocated.get(), MAX_CHUNKS * CHUNK_SIZE);
+        for (int i = 0; i < n; i++) {
+            AtomicLongArray chunk = chunks.get(i >>> CHUNK_SHIFT);
+            if (chunk == null) {
+                continue;
+            }
+            long v = chunk.get(stateIndex(i));
+            if (v > 0) {
+                min = Math.min(min, v);
+            } else if (v < 0 && v >= PENDING_MIN) {
+                min = Math.min(min, -v);
+            }
+            if (withSnapshots) {
+                long xmin = chunk.get(xminIndex(i));
+                if (xmin > 0) {
+                    min = Math.min(min, xmin);
+                }
+            }
+        }
+        return min;
+    }
+
+    private AtomicLongArray chunk(int slot) {
+        return chunks.get(slot >>> CHUNK_SHIFT);
+    }
+
+    private static int stateIndex(int slot) {
+        return (slot & (CHUNK_SIZE - 1)) * SLOT_LONGS;
+    }
+
+    private static int xminIndex(int slot) {
+        return (slot & (CHUNK_SIZE - 1)) * SLOT_LONGS + 1;
+    }
+
+    /**
+     * 分配一个从未使用过的槽位，槽位用完时抛出TooManyActiveTransactionsException
+     */
+    private int allocate() {
+        int slot;
+        do {
+            slot = allocated.get();
+            if (slot >= MAX_CHUNKS * CHUNK_SIZE) {
+                throw Errors.TooManyActiveTransactionsException;
+            }
+        } while (!allocated.compareAndSet(slot, slot + 1));
+        int c = slot >>> CHUNK_SHIFT;
+        if (chunks.get(c) == null) {
+            chunks.compareAndSet(c, null, new AtomicLongArray(CHUNK_SIZE * SLOT_LONGS));
+        }
+        return slot;
+    }
+
+    /**
+     * 从空闲链表取一个槽位，链表为空返回-1
+     */
+    private int popFree() {
+        while (true) {
+            long head = freeHead.get();
+            int top = (int) head;
+            if (top == 0) {
+                return -1;
+            }
+            long v = chunk(top - 1).get(stateIndex(top - 1));
+            if (v >= PENDING_MIN) {
+                // 槽位已被其它线程取走，链表头也一定变了，重试
+                continue;
+            }
+            long next = (v - FREE) & 0xFFFFFFFFL;
+            if (freeHead.compareAndSet(head, (((head >>> 32) + 1) << 32) | next)) {
+                return top - 1;
+            }
+        }
+    }
+
+    private void pushFree(int slot) {
+        AtomicLongArray chunk = chunk(slot);
+        while (true) {
+            long head = freeHead.get();
+            chunk.set(stateIndex(slot), FREE + (head & 0xFFFFFFFFL));
+            if (freeHead.compareAndSet(head, (((head >>> 32) + 1) << 32) | (slot + 1))) {
+                return;
+            }
+        }
+    }
+}
@@ -0,0 +1,101 @@
+package kangc.kkccdb.backend.manager.transaction;
+
+import java.util.Arrays;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 组提交
+ * <p>
+ * commit/rollback把事务状态放入队列后等待刷盘。没有线程在刷盘时，提交者自己成为leader，
+ * 把队列中所有状态一次写入并只force一次；leader刷盘期间到达的请求攒成下一批，由下一个leader处理。
+ * 负载低时队列里只有自己，立即刷盘，不会额外等待；负载越高，每批越大，fsync次数越少。
+ */
+class GroupCommit {
+
+    /**
+     * 把一批事务状态写入文件并刷盘
+     */
+    interface Flusher {
+        void flush(long[] trxIds, byte[] status, int n);
+    }
+
+    private final Flusher flusher;
+    private final Lock lock;
+    private final Condition flushed;
+
+    // 等待刷盘的事务状态
+    private long[] pendingIds;
+    private byte[] pendingStatus;
+    private int pending;
+
+    // leader正在刷盘的一批，和pending交替使用
+    private long[] flushingIds;
+    private byte[] flushingStatus;
+
+    // 是否有leader正在刷盘
+    private boolean flushing;
+
+    // 已入队的请求序号、已刷盘的请求序号
+    private long submitted;
+    private long durable;
+
+    GroupCommit(Flusher flusher) {
+        this.flusher = flusher;
+        lock = new ReentrantLock();
+        flushed = lock.newCondition();
+        pendingIds = new long[64];
+        pendingStatus = new byte[64];
+        flushingIds = new long[64];
+        flushingStatus = new byte[64];
+    }
+
+    /**
+     * 提交一个事务状态，返回时该状态已经刷盘
+     */
+    void submit(long trxId, byte status) {
+        lock.lock();
+        try {
+            if (pending == pendingIds.length) {
+                pendingIds = Arrays.copyOf(pendingIds, pending << 1);
+                pendingStatus = Arrays.copyOf(pendingStatus, pending << 1);
+            }
+            pendingIds[pending] = trxId;
+            pendingStatus[pending] = status;
+            pending++;
+            long seq = ++submitted;
+
+            while (durable < seq) {
+                if (flushing) {
+                    // 已有leader在刷盘，等它刷完，自己的请求可能在下一批
+                    flushed.awaitUninterruptibly();
+                    continue;
+                }
+                // 成为leader，带走当前队列中的所有请求
+                flushing = true;
+                long[] ids = pendingIds;
+                byte[] st = pendingStatus;
+                int n = pending;
+                long batchEnd = submitted;
+                pendingIds = flushingIds;
+                pendingStatus = flushingStatus;
+                pending = 0;
+                flushingIds = ids;
+                flushingStatus = st;
+
+                lock.unlock();
+                try {
+                    flusher.flush(ids, st, n);
+                } finally {
+                    lock.lock();
+                    flushing = false;
+                    durable = batchEnd;
+                    flushed.signalAll();
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+}
@@ -0,0 +1,251 @@
+package kangc.kkccdb.backend.manager.transaction;
+
+import kangc.kkccdb.utils.Errors;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 数据项锁表：按uid加排他锁，事务结束时一次释放
+ * <p>
+ * 读走MVCC快照不加锁，只有修改同一个数据项的事务之间互斥，所以只有排他锁。
+ * 锁表按uid的哈希分成许多段，每段一把小锁，不同段的加锁、释放互不影响；
+ * 锁被占用时事务排进该数据项的等待队列，在自己的线程上park，释放时按FIFO直接交给队首的事务并unpark它。
+ * <p>
+ * 每个事务最多等待一个数据项，排他锁只有一个持有者，所以等待图中每个事务最多一条出边。
+ * 每次等待前加上自己的边，沿着“等待的数据项 -> 持有者 -> 持有者等待的数据项”走下去，
+ * 回到自己就是死锁，由这个事务放弃等待并抛出DeadlockException。
+ * 加边和检测在同一把全局锁下进行，任何环都由最后加入的边闭合，所以不会漏检；
+ * 锁交给等待者时，等待者已不再等待，没有出边，不会形成新的环。无竞争的加锁不碰全局锁。
+ * <p>
+ * 等待不响应中断，线程在等待中被中断时，拿到锁后中断标志仍然保留。同一个事务不能同时在多个线程中加锁。
+ */
+public class LockManager {
+
+    private static final int DEFAULT_STRIPES = 1024;
+
+    private final Stripe[] stripes;
+    private final int mask;
+
+    // 只在等待路径上使用，串行化等待图的加边和检测
+    private final ReentrantLock graphLock;
+
+    // 持有锁或正在等待的事务
+    private final Map<Long, Trx> trxs;
+
+    private static class Stripe {
+        final ReentrantLock lock = new ReentrantLock();
+        final HashMap<Long, Item> items = new HashMap<>();
+    }
+
+    private static class Item {
+        Trx owner;
+        final ArrayDeque<Trx> waiters = new ArrayDeque<>();
+    }
+
+    private static class Trx {
+        final long trxId;
+
+        // 正在等待的uid，0表示没有等待；只在graphLock下由0变为非0
+        volatile long waitingFor;
+        volatile boolean granted;
+        Thread thread;
+
+        // 持有的uid，只由事务自己的线程修改
+        long[] held = new long[8];
+        int heldCount;
+
+        Trx(long trxId) {
+            this.trxId = trxId;
+        }
+
+        void addHeld(long uid) {
+            if (heldCount == held.length) {
+                held = Arrays.copyOf(held, heldCount << 1);
+            }
+            held[heldCount++] = uid;
+        }
+    }
+
+    public LockManager() {
+        this(DEFAULT_STRIPES);
+    }
+
+    /**
+     * @param stripes 分段数，向上取整到2的幂
+     */
+    public LockManager(int stripes) {
+        if (stripes <= 0) {
+            throw new IllegalArgumentException("分段数必须大于0");
+        }
+        int n = Integer.highestOneBit(stripes);
+        if (n < stripes) {
+            n <<= 1;
+        }
+        this.stripes = new Stripe[n];
+        for (int i = 0; i < n; i++) {
+            this.stripes[i] = new Stripe();
+        }
+        this.mask = n - 1;
+        this.graphLock = new ReentrantLock();
+        this.trxs = new ConcurrentHashMap<>();
+    }
+
+    /**
+     * 事务trxId对数据项uid加排他锁，已经持有时直接返回，被占用时阻塞到拿到锁；uid不能为0
+     * 抛出DeadlockException时没有拿到锁，已持有的锁不变，调用方应回滚事务并调用releaseAll
+     */
+    public void lock(long trxId, long uid) {
+        Trx trx = trxs.computeIfAbsent(trxId, Trx::new);
+        Stripe stripe = stripe(uid);
+        stripe.lock.lock();
+        try {
+            Item item = stripe.items.get(uid);
+            if (item == null) {
+                item = new Item();
+                item.owner = trx;
+                stripe.items.put(uid, item);
+                trx.addHeld(uid);
+                return;
+            }
+            if (item.owner == trx) {
+                return;
+            }
+        } finally {
+            stripe.lock.unlock();
+        }
+        await(trx, uid, stripe);
+    }
+
+    /**
+     * 锁被占用，在graphLock下重新检查，排进等待队列并检测死锁，然后park到锁交给自己
+     */
+    private void await(Trx trx, long uid, Stripe stripe) {
+        graphLock.lock();
+        try {
+            stripe.lock.lock();
+            try {
+                Item item = stripe.items.get(uid);
+                if (item == null) {
+                    // 在两次加锁之间被释放了
+                    item = new Item();
+                    item.owner = trx;
+                    stripe.items.put(uid, item);
+                    trx.addHeld(uid);
+                    return;
+                }
+                trx.granted = false;
+                trx.thread = Thread.currentThread();
+                trx.waitingFor = uid;
+                item.waiters.addLast(trx);
+            } finally {
+                stripe.lock.unlock();
+            }
+            if (closesCycle(trx, uid)) {
+                stripe.lock.lock();
+                try {
+                    Item item = stripe.items.get(uid);
+                    // 检测期间锁可能已经交给了自己
+                    if (!trx.granted) {
+                        item.waiters.remove(trx);
+                        trx.waitingFor = 0;
+                        throw Errors.DeadlockException;
+                    }
+                } finally {
+                    stripe.lock.unlock();
+                }
+            }
+        } finally {
+            graphLock.unlock();
+        }
+        // 中断标志还在时park立刻返回，先清掉，拿到锁后再恢复，等待不会被中断打断
+        boolean interrupted = false;
+        while (!trx.granted) {
+            LockSupport.park(this);
+            if (Thread.interrupted()) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+        trx.addHeld(uid);
+    }
+
+    /**
+     * 从trx等待的uid出发沿等待图走，回到trx说明加上这条边后成环
+     */
+    private boolean closesCycle(Trx trx, long uid) {
+        long waiting = uid;
+        while (waiting != 0) {
+            Trx owner = owner(waiting);
+            if (owner == null) {
+                return false;
+            }
+            if (owner == trx) {
+                return true;
+            }
+            waiting = owner.waitingFor;
+        }
+        return false;
+    }
+
+    private Trx owner(long uid) {
+        Stripe stripe = stripe(uid);
+        stripe.lock.lock();
+        try {
+            Item item = stripe.items.get(uid);
+            return item == null ? null : item.owner;
+        } finally {
+            stripe.lock.unlock();
+        }
+    }
+
+    /**
+     * 事务结束，释放它持有的所有锁，每个数据项交给等待队列中最早的事务
+     */
+    public void releaseAll(long trxId) {
+        Trx trx = trxs.remove(trxId);
+        if (trx == null) {
+            return;
+        }
+        for (int i = 0; i < trx.heldCount; i++) {
+            long uid = trx.held[i];
+            Stripe stripe = stripe(uid);
+            Trx next;
+            stripe.lock.lock();
+            try {
+                Item item = stripe.items.get(uid);
+                next = item.waiters.pollFirst();
+                if (next == null) {
+                    stripe.items.remove(uid);
+                    continue;
+                }
+                item.owner = next;
+                next.waitingFor = 0;
+                next.granted = true;
+            } finally {
+                stripe.lock.unlock();
+            }
+            LockSupport.unpark(next.thread);
+        }
+    }
+
+    /**
+     * 事务是否持有uid的锁
+     */
+    public boolean isHeldBy(long trxId, long uid) {
+        Trx owner = owner(uid);
+        return owner != null && owner.trxId == trxId;
+    }
+
+    private Stripe stripe(long uid) {
+        // uid的低位是页内偏移，高位是页号，乘以黄金比例常数后取高位打散
+        return stripes[(int) ((uid * 0x9E3779B97F4A7C15L) >>> 32) & mask];
+    }
+}
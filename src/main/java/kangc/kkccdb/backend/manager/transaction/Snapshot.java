@@ -0,0 +1,51 @@
+package kangc.kkccdb.backend.manager.transaction;
+
+import java.util.Arrays;
+
+/**
+ * 事务快照，创建后不可变
+ * <p>
+ * xmin：创建快照时最老的活跃事务，比它小的事务都已结束；
+ * xmax：创建快照时尚未分配的最小事务id，不小于它的事务对快照来说都还未开始；
+ * active：[xmin, xmax)之间创建快照时仍活跃的事务，升序。
+ */
+public class Snapshot {
+
+    // 创建快照时活跃事务表的版本，版本不变时可以复用同一个快照
+    final long version;
+
+    private final long xmin;
+    private final long xmax;
+    private final long[] active;
+
+    Snapshot(long version, long xmin, long xmax, long[] active) {
+        this.version = version;
+        this.xmin = xmin;
+        this.xmax = xmax;
+        this.active = active;
+    }
+
+    public long getXmin() {
+        return xmin;
+    }
+
+    public long getXmax() {
+        return xmax;
+    }
+
+    /**
+     * 创建快照时仍活跃的事务，返回副本
+     */
+    public long[] getActive() {
+        return active.clone();
+    }
+
+    /**
+     * 创建快照时，事务trxId是否还未结束（活跃或尚未开始），这样的事务对快照不可见
+     */
+    public boolean isRunning(long trxId) {
+        if (trxId >= xmax) return true;
+        if (trxId < xmin) return false;
+        return Arrays.binarySearch(active, trxId) >= 0;
+    }
+}
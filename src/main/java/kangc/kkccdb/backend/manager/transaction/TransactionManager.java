@@ -1,6 +1,10 @@
 package kangc.kkccdb.backend.manager.transaction;
 
-import kangc.kkccdb.backend.common.Parser;
+import kangc.kkccdb.backend.common.RateLimiter;
+import kangc.kkccdb.backend.jfr.CounterLockEvent;
+import kangc.kkccdb.backend.jfr.FsyncEvent;
+import kangc.kkccdb.backend.jfr.TransactionBeginEvent;
+import kangc.kkccdb.utils.Errors;
 import kangc.kkccdb.utils.Panic;
 
 import java.io.File;
@@ -9,20 +13,52 @@ import java.io.IOException;
 import java.io.RandomAccessFile;
 import java.nio.ByteBuffer;
 import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantLock;
 
 /**
  * 事务管理模块
+ * <p>
+ * 文件头记录的是"已预留"的最大事务ID，而不是已分配的最大事务ID：
+ * 每次预留 TRXID_RESERVE_STEP 个事务ID，预留区间的状态先全部写成aborted并刷盘，
+ * 之后普通的begin()只是内存中的原子自增，不再落盘。
+ * 重启时预留但未使用、以及崩溃时仍活跃的事务ID，在文件中都是aborted状态。
+ * <p>
+ * 事务ID文件的大小是固定的：
+ * [header][状态窗口：windowSize个状态，环形复用][冻结区间中aborted的事务id段列表，8B一段，升序]
+ * 冻结事务id(frozenTrxId)及之前的事务都已结束，它们的状态压缩成aborted列表（不在列表中即committed），
+ * 列表中每项是一段连续的aborted事务id：高48位是第一个id，低16位是长度减1。
+ * 崩溃时预留未用的整个区间只占一项，列表只随回滚次数增长，不随事务总数增长。
+ * 状态窗口只保存(frozenTrxId, trxIdLimit]区间，预留新区间时复用已冻结事务的位置。
  */
 public class TransactionManager {
 
-    // 事务ID文件头的长度，从文件的前8字节读出事务id
-    private static final int TRXID_HEADER_LENGTH = 8;
+    // 事务ID文件头：已预留的最大事务id(8B)、冻结事务id(8B)、冻结区间aborted事务数(8B)、状态窗口大小(4B)
+    private static final int TRXID_HEADER_LENGTH = 28;
+
+    // 每次预留的事务ID个数，预留一次需要两次刷盘
+    private static final int TRXID_RESERVE_STEP = 4096;
+
+    // 默认状态窗口大小，未结束的最老事务与最新事务之间最多相差这么多个事务
+    private static final int TRXID_WINDOW_SIZE = 1 << 22;
 
     // 事务字段，这里只用1B来标识状态，跟在header后面
     private static final int TRXID_FIELD_SIZE = 1;
 
+    // aborted列表中每段占8B
+    private static final int FROZEN_ID_SIZE = 8;
+
+    // 每段的长度占低16位
+    private static final int RUN_BITS = 16;
+    private static final int MAX_RUN = 1 << RUN_BITS;
+
+    // 列表中的id占高48位，事务id不能超过它
+    private static final long MAX_TRXID = (1L << (64 - RUN_BITS)) - 1;
+
     // 事务状态，活跃、已提交、中止（已回滚）
     private static final byte TRAN_ACTIVE = 0;
     private static final byte TRAN_COMMITTED = 1;
@@ -38,13 +74,44 @@ public class TransactionManager {
     private final FileChannel fileChannel;
 
     // 当前分配到的最大事务ID
-    private long trxIdCounter;
+    private final AtomicLong trxIdCounter;
+
+    // 已预留（持久化到文件头）的最大事务ID，trxIdCounter超过它时才需要落盘
+    private volatile long trxIdLimit;
+
+    // 冻结事务ID，它及之前的事务都已结束，状态在aborted列表中查
+    private volatile long frozenTrxId;
+
+    // aborted列表的段数，先于frozenTrxId更新
+    private volatile long frozenAbortedCount;
+
+    // 状态窗口大小
+    private int windowSize;
+
+    // 预留事务ID时加锁
     private final Lock counterLock;
 
+    // 正在复制状态窗口的备份数，不为0时冻结要等待，窗口中的位置不会被复用；counterLock保护
+    private int backups;
+    private final Condition backupDone;
+
+    // commit/rollback的状态通过组提交落盘
+    private final GroupCommit groupCommit;
+
+    // 已begin、还未提交或回滚的事务。这些事务在文件中的状态是预留时写入的aborted，真实状态以内存为准
+    private final ActiveTransactions activeTrx;
+
+    // 查询事务状态时读文件用的缓冲区，每个线程复用一个
+    private static final ThreadLocal<ByteBuffer> READ_BUF = ThreadLocal.withInitial(() -> ByteBuffer.allocate(FROZEN_ID_SIZE));
+
     private TransactionManager(File file, FileChannel fileChannel) {
         this.file = file;
         this.fileChannel = fileChannel;
+        trxIdCounter = new AtomicLong();
         counterLock = new ReentrantLock();
+        backupDone = counterLock.newCondition();
+        activeTrx = new ActiveTransactions();
+        groupCommit = new GroupCommit(this::writeTrxStatus);
         checkXIDCounter();
     }
 
@@ -52,6 +119,13 @@ public class TransactionManager {
      * 创建一个新的事务管理器，尝试创建一个新的事务ID文件
      */
     public static TransactionManager create(String path) {
+        return create(path, TRXID_WINDOW_SIZE);
+    }
+
+    /**
+     * 创建一个新的事务管理器，指定状态窗口大小
+     */
+    static TransactionManager create(String path, int windowSize) {
         File f = new File(path);
         try {
             if (!f.createNewFile()) {
@@ -72,11 +146,13 @@ public class TransactionManager {
             Panic.panic(e);
         }
 
-        // 写空trxId文件头
-        ByteBuffer buf = ByteBuffer.wrap(new byte[TRXID_HEADER_LENGTH]);
+        // 写空trxId文件头，并把文件扩展到状态窗口的大小
+        ByteBuffer buf = ByteBuffer.allocate(TRXID_HEADER_LENGTH);
+        buf.putLong(0).putLong(0).putLong(0).putInt(windowSize).flip();
         try {
             fc.position(0);
             fc.write(buf);
+            fc.write(ByteBuffer.wrap(new byte[1]), TRXID_HEADER_LENGTH + (long) windowSize * TRXID_FIELD_SIZE - 1);
         } catch (IOException e) {
             Panic.panic(e);
         }
@@ -110,7 +186,7 @@ public class TransactionManager {
 
     /**
      * 校验trxId事务ID文件，确保是合法的
-     * 读取XID_FILE_HEADER中的trxidCounter，根据它计算文件的理论长度，对比实际长度
+     * 读取XID_FILE_HEADER，根据状态窗口大小和aborted列表长度计算文件的理论长度，对比实际长度
      */
     private void checkXIDCounter() {
         long fileLen = file.length();
@@ -124,104 +200,286 @@ public class TransactionManager {
         // 创建 ByteBuffer 实例，分配与 TRXID_HEADER_LENGTH 大小相等的字节缓冲区
         ByteBuffer buf = ByteBuffer.allocate(TRXID_HEADER_LENGTH);
         try {
-            // 读取文件的位置，0即文件开头
-            fileChannel.position(0);
-            // 从文件当前位置0，读取TRXID_HEADER_LENGTH 字节数据到 buf 中。缓冲区填充完后，buf指向数据末尾
-            fileChannel.read(buf);
+            // 从文件开头读取TRXID_HEADER_LENGTH 字节数据到 buf 中
+            fileChannel.read(buf, 0);
         } catch (IOException e) {
             Panic.panic(e);
         }
-        // 当前的事务id (事务文件中的前8字节数据转成long类型的事务id)
-        this.trxIdCounter = Parser.parseLong(buf.array());
-        long end = getTrxIdPosition(this.trxIdCounter + 1); // +1是因为事务状态也占一位
-        if (end != fileLen) {
+        buf.flip();
+        long limit = buf.getLong();
+        long frozen = buf.getLong();
+        long abortedCount = buf.getLong();
+        this.windowSize = buf.getInt();
+        if (windowSize <= 0 || frozen > limit || limit - frozen > windowSize) {
+            Panic.panic(new RuntimeException("事务ID文件头错误!"));
+        }
+        this.trxIdLimit = limit;
+        this.frozenTrxId = frozen;
+        this.frozenAbortedCount = abortedCount;
+        // 预留但未使用的事务id都视为aborted，新事务从预留区间之后开始分配
+        this.trxIdCounter.set(limit);
+
+        long end = getFrozenPosition(abortedCount);
+        if (end > fileLen) {
             Panic.panic(new RuntimeException("不完整的事务ID文件!"));
         }
+        if (end < fileLen) {
+            // 追加了aborted列表但文件头未更新就崩溃了，丢弃多出的部分
+            try {
+                fileChannel.truncate(end);
+            } catch (IOException e) {
+                Panic.panic(e);
+            }
+        }
     }
 
     /**
-     * 根据事务ID (trxId) 计算在文件中的偏移量
+     * 根据事务ID (trxId) 计算在状态窗口中的偏移量
      */
     private long getTrxIdPosition(long trxId) {
-        return TRXID_HEADER_LENGTH + (trxId - 1) * TRXID_FIELD_SIZE;
+        return TRXID_HEADER_LENGTH + ((trxId - 1) % windowSize) * TRXID_FIELD_SIZE;
+    }
+
+    /**
+     * aborted列表中第index段在文件中的偏移量
+     */
+    private long getFrozenPosition(long index) {
+        return TRXID_HEADER_LENGTH + (long) windowSize * TRXID_FIELD_SIZE + index * FROZEN_ID_SIZE;
     }
 
     /**
-     * 更新当前事务的状态，写入到文件中
+     * 把一批事务的状态写入文件，整批只刷一次盘，由组提交的leader调用
+     * 按事务id排序，id相邻（且在状态窗口中不绕回）的状态合并成一次写
      *
-     * @param trxId  事务id
-     * @param status 状态
+     * @param trxIds 事务id
+     * @param status 对应的状态
+     * @param n      本批数量
      */
-    private void updateTrxId(long trxId, byte status) {
-        // 事务id的在文件的偏移量
-        long offset = getTrxIdPosition(trxId);
-        // 事务的状态字段占1B
-        byte[] tmp = new byte[TRXID_FIELD_SIZE];
-        tmp[0] = status;
-        ByteBuffer buf = ByteBuffer.wrap(tmp);
-        try {
-            fileChannel.position(offset);
-            fileChannel.write(buf);
-        } catch (IOException e) {
-            Panic.panic(e);
+    private void writeTrxStatus(long[] trxIds, byte[] status, int n) {
+        // 事务id和状态(2bit)拼成一个long排序
+        long[] keys = new long[n];
+        for (int i = 0; i < n; i++) {
+            keys[i] = (trxIds[i] << 2) | status[i];
         }
+        Arrays.sort(keys);
         try {
-            fileChannel.force(true);
+            int i = 0;
+            while (i < n) {
+                int j = i + 1;
+                while (j < n && (keys[j] >>> 2) == (keys[j - 1] >>> 2) + 1
+                        && ((keys[j] >>> 2) - 1) % windowSize != 0) {
+                    j++;
+                }
+                byte[] run = new byte[(j - i) * TRXID_FIELD_SIZE];
+                for (int k = i; k < j; k++) {
+                    run[k - i] = (byte) (keys[k] & 3);
+                }
+                // 按偏移量写，不修改通道的position
+                fileChannel.write(ByteBuffer.wrap(run), getTrxIdPosition(keys[i] >>> 2));
+                i = j;
+            }
+            FsyncEvent.force(fileChannel, true, "trxId");
         } catch (IOException e) {
             Panic.panic(e);
         }
     }
 
     /**
-     * 递增，为新事务分配新事务ID
-     * 写入事务文件，持久化变更header，不用修改事务状态
+     * 预留新的事务ID区间，直到trxId被包含在预留区间内
+     * 先把新区间的事务状态写成aborted并刷盘，再持久化header，保证header指向的区间在文件中一定存在
+     * 状态窗口不够用时，先推进冻结事务ID，腾出已结束事务的位置
      */
-    private void incrTrxIdCounter() {
-        trxIdCounter++;
-        ByteBuffer buf = ByteBuffer.wrap(Parser.long2Byte(trxIdCounter));
+    private void reserveTrxIds(long trxId) {
+        CounterLockEvent event = new CounterLockEvent();
+        event.begin();
+        long waitStart = System.nanoTime();
+        counterLock.lock();
+        long waitTime = System.nanoTime() - waitStart;
+        boolean froze = false;
         try {
-            fileChannel.position(0);
-            fileChannel.write(buf);
-        } catch (IOException e) {
-            Panic.panic(e);
+            if (trxId > MAX_TRXID) {
+                Panic.panic(new RuntimeException("事务id已用完!"));
+            }
+            while (trxId > trxIdLimit) {
+                if (trxIdLimit + TRXID_RESERVE_STEP - frozenTrxId > windowSize) {
+                    while (backups > 0) {
+                        backupDone.awaitUninterruptibly();
+                    }
+                    freeze();
+                    froze = true;
+                }
+                long limit = Math.min(trxIdLimit + TRXID_RESERVE_STEP, frozenTrxId + windowSize);
+                if (limit <= trxIdLimit) {
+                    // 最老的活跃事务结束后窗口才能腾出位置，由调用方决定重试还是结束长事务
+                    throw Errors.TrxIdWindowFullException;
+                }
+                try {
+                    // 新区间在状态窗口中可能绕回到开头，分两段写
+                    long from = trxIdLimit + 1;
+                    while (from <= limit) {
+                        long index = (from - 1) % windowSize;
+                        int len = (int) Math.min(limit - from + 1, windowSize - index);
+                        byte[] status = new byte[len * TRXID_FIELD_SIZE];
+                        Arrays.fill(status, TRAN_ABORTED);
+                        fileChannel.write(ByteBuffer.wrap(status), getTrxIdPosition(from));
+                        from += len;
+                    }
+                    FsyncEvent.force(fileChannel, true, "trxId");
+                    writeHeader(limit, frozenTrxId, frozenAbortedCount);
+                    FsyncEvent.force(fileChannel, true, "trxId");
+                } catch (IOException e) {
+                    Panic.panic(e);
+                }
+                trxIdLimit = limit;
+            }
+        } finally {
+            counterLock.unlock();
         }
+        event.end();
+        if (event.shouldCommit()) {
+            event.waitTime = waitTime;
+            event.trxIdLimit = trxIdLimit;
+            event.froze = froze;
+            event.commit();
+        }
+    }
+
+    /**
+     * 推进冻结事务ID到最老活跃事务之前，把新冻结区间中aborted的事务按连续段追加到aborted列表
+     * 先追加列表并刷盘，再持久化header，最后才允许复用这部分状态窗口
+     */
+    private void freeze() {
+        long horizon = Math.min(activeTrx.oldest(trxIdCounter.get() + 1) - 1, trxIdLimit);
+        long frozen = frozenTrxId;
+        if (horizon <= frozen) {
+            return;
+        }
+        long count = frozenAbortedCount;
         try {
-            fileChannel.force(true);
+            // 扫描(frozen, horizon]的状态，把连续的aborted事务合并成一段
+            ByteBuffer runs = ByteBuffer.allocate(1 << 16);
+            long runStart = 0;
+            int runLength = 0;
+            long from = frozen + 1;
+            while (from <= horizon) {
+                long index = (from - 1) % windowSize;
+                int len = (int) Math.min(Math.min(horizon - from + 1, windowSize - index), 1 << 16);
+                ByteBuffer status = ByteBuffer.allocate(len * TRXID_FIELD_SIZE);
+                fileChannel.read(status, getTrxIdPosition(from));
+                for (int i = 0; i < len; i++) {
+                    if (status.get(i) == TRAN_COMMITTED) {
+                        continue;
+                    }
+                    long trxId = from + i;
+                    if (runLength > 0 && runStart + runLength == trxId && runLength < MAX_RUN) {
+                        runLength++;
+                        continue;
+                    }
+                    if (runLength > 0) {
+                        count += appendRun(runs, runStart, runLength, count);
+                    }
+                    runStart = trxId;
+                    runLength = 1;
+                }
+                from += len;
+            }
+            if (runLength > 0) {
+                count += appendRun(runs, runStart, runLength, count);
+            }
+            runs.flip();
+            count += appendFrozen(runs, count);
+            FsyncEvent.force(fileChannel, true, "trxId");
+            writeHeader(trxIdLimit, horizon, count);
+            FsyncEvent.force(fileChannel, true, "trxId");
         } catch (IOException e) {
             Panic.panic(e);
         }
+        frozenAbortedCount = count;
+        frozenTrxId = horizon;
+    }
+
+    /**
+     * 把一段放进缓冲区，缓冲区满时先写出去，返回写到文件的段数
+     *
+     * @param index 缓冲区中第一段在列表中的序号
+     */
+    private long appendRun(ByteBuffer runs, long start, int length, long index) throws IOException {
+        long written = 0;
+        if (!runs.hasRemaining()) {
+            runs.flip();
+            written = appendFrozen(runs, index);
+            runs.clear();
+        }
+        runs.putLong((start << RUN_BITS) | (length - 1));
+        return written;
+    }
+
+    /**
+     * 追加一批段到列表末尾，返回追加的个数
+     */
+    private long appendFrozen(ByteBuffer runs, long index) throws IOException {
+        int n = runs.remaining() / FROZEN_ID_SIZE;
+        long position = getFrozenPosition(index);
+        while (runs.hasRemaining()) {
+            position += fileChannel.write(runs, position);
+        }
+        return n;
+    }
+
+    private void writeHeader(long limit, long frozen, long abortedCount) throws IOException {
+        ByteBuffer buf = ByteBuffer.allocate(TRXID_HEADER_LENGTH);
+        buf.putLong(limit).putLong(frozen).putLong(abortedCount).putInt(windowSize).flip();
+        fileChannel.write(buf, 0);
     }
 
     /**
      * 启动一个新事务，返回事务id（上一个事务id+1）
+     * 只有用完预留区间时才需要加锁落盘，其余情况只是内存中的原子自增
+     * 状态窗口被运行时间过长的事务占满时抛出TrxIdWindowFullException，
+     * 活跃事务表满时抛出TooManyActiveTransactionsException，事务没有开始，结束长事务后可以重试
      */
     public long begin() {
-        counterLock.lock();
-        try {
-            // 获取下一个事务id
-            long trxId = trxIdCounter + 1;
-            // 设置新事务状态为active，更新事务文件
-            updateTrxId(trxId, TRAN_ACTIVE);
-            // 更新当前事务id (内存中的trxIdCounter+1)
-            incrTrxIdCounter();
-            return trxId;
-        } finally {
-            counterLock.unlock();
+        TransactionBeginEvent event = new TransactionBeginEvent();
+        event.begin();
+        // 先占活跃事务表的槽位，写入id下限，再分配id
+        int slot = activeTrx.claim(trxIdCounter.get() + 1);
+        // 获取下一个事务id
+        long trxId = trxIdCounter.incrementAndGet();
+        boolean reserved = trxId > trxIdLimit;
+        if (reserved) {
+            try {
+                reserveTrxIds(trxId);
+            } catch (RuntimeException e) {
+                // 这个id没有预留成功，以后预留到它时写成aborted
+                activeTrx.abandon(slot);
+                throw e;
+            }
+        }
+        // 设置新事务状态为active，只记录在内存中
+        activeTrx.publish(slot, trxId);
+        event.end();
+        if (event.shouldCommit()) {
+            event.trxId = trxId;
+            event.reserved = reserved;
+            event.commit();
         }
+        return trxId;
     }
 
     /**
-     * 提交事务
+     * 提交事务，和并发的其它提交、回滚一起刷盘，返回时状态已持久化
      */
     public void commit(long trxId) {
-        updateTrxId(trxId, TRAN_COMMITTED);
+        groupCommit.submit(trxId, TRAN_COMMITTED);
+        activeTrx.remove(trxId);
     }
 
     /**
-     * 事务回滚
+     * 事务回滚，和提交一样走组提交
      */
     public void rollback(long trxId) {
-        updateTrxId(trxId, TRAN_ABORTED);
+        groupCommit.submit(trxId, TRAN_ABORTED);
+        activeTrx.remove(trxId);
     }
 
     /**
@@ -231,16 +489,54 @@ public class TransactionManager {
      * @param status 状态(active、committed、aborted)
      */
     private boolean checkTrxId(long trxId, byte status) {
-        // 获取trxId事务的状态在文件中的偏移量
-        long offset = getTrxIdPosition(trxId);
-        ByteBuffer buf = ByteBuffer.wrap(new byte[TRXID_FIELD_SIZE]);
-        try {
-            fileChannel.position(offset);
-            fileChannel.read(buf);
-        } catch (IOException e) {
-            Panic.panic(e);
+        if (trxId > trxIdLimit) {
+            // 超出预留区间的id从未分配出去（或begin失败），不能映射到状态窗口，否则读到的是别的事务的状态
+            return status == TRAN_ABORTED;
         }
-        return buf.array()[0] == status;
+        if (trxId > frozenTrxId) {
+            // 获取trxId事务的状态在文件中的偏移量
+            long offset = getTrxIdPosition(trxId);
+            ByteBuffer buf = READ_BUF.get();
+            buf.clear().limit(TRXID_FIELD_SIZE);
+            try {
+                fileChannel.read(buf, offset);
+            } catch (IOException e) {
+                Panic.panic(e);
+            }
+            // 读完后事务仍未被冻结，说明读到的位置还没被复用
+            if (trxId > frozenTrxId) {
+                return buf.get(0) == status;
+            }
+        }
+        // 已冻结的事务只有committed和aborted两种状态
+        boolean aborted = isFrozenAborted(trxId);
+        return status == TRAN_ABORTED ? aborted : status == TRAN_COMMITTED && !aborted;
+    }
+
+    /**
+     * 在aborted列表中二分查找第一个id不大于trxId的最后一段，trxId落在这段中就是aborted
+     */
+    private boolean isFrozenAborted(long trxId) {
+        long lo = 0, hi = frozenAbortedCount - 1;
+        long run = -1;
+        ByteBuffer buf = READ_BUF.get();
+        while (lo <= hi) {
+            long mid = (lo + hi) >>> 1;
+            buf.clear();
+            try {
+                fileChannel.read(buf, getFrozenPosition(mid));
+            } catch (IOException e) {
+                Panic.panic(e);
+            }
+            long entry = buf.getLong(0);
+            if ((entry >>> RUN_BITS) <= trxId) {
+                run = entry;
+                lo = mid + 1;
+            } else {
+                hi = mid - 1;
+            }
+        }
+        return run >= 0 && trxId - (run >>> RUN_BITS) <= (run & (MAX_RUN - 1));
     }
 
     /**
@@ -249,6 +545,7 @@ public class TransactionManager {
     public boolean isActive(long trxId) {
         // super trx永远处于committed状态
         if (trxId == SUPER_TRXID) return false;
+        if (activeTrx.contains(trxId)) return true;
         return checkTrxId(trxId, TRAN_ACTIVE);
     }
 
@@ -258,6 +555,7 @@ public class TransactionManager {
     public boolean isCommitted(long trxId) {
         // super trx永远处于committed状态
         if (trxId == SUPER_TRXID) return true;
+        if (activeTrx.contains(trxId)) return false;
         return checkTrxId(trxId, TRAN_COMMITTED);
     }
 
@@ -267,9 +565,149 @@ public class TransactionManager {
     public boolean isAborted(long trxId) {
         // super trx永远处于committed状态
         if (trxId == SUPER_TRXID) return false;
+        if (activeTrx.contains(trxId)) return false;
         return checkTrxId(trxId, TRAN_ABORTED);
     }
 
+    /**
+     * 为事务trxId创建快照，不加全局锁
+     * 自上次创建快照以来没有事务结束时，直接复用同一个快照
+     */
+    public Snapshot snapshot(long trxId) {
+        return activeTrx.snapshot(trxId, trxIdCounter);
+    }
+
+    /**
+     * 最老的活跃快照xmin（和最老的活跃事务取较小值），比它小的已提交事务删除的数据可以回收
+     */
+    public long getOldestXmin() {
+        return activeTrx.oldestXmin(trxIdCounter.get() + 1);
+    }
+
+    /**
+     * 让以后begin分配的id都大于trxId，跳过的id按aborted处理；只在恢复时、还没有begin之前调用
+     * 在线备份先复制事务ID文件再复制日志，副本的日志中可能有超出预留区间的id，不能再分配给新事务，
+     * 否则这些事务留下的数据会随新事务提交而变得可见
+     * 跳过的id超出状态窗口时，先冻结已有的事务，再把整段跳过的id直接记成冻结区间中的aborted段，不经过状态窗口
+     */
+    public void skipTrxIds(long trxId) {
+        if (trxId <= trxIdCounter.get()) {
+            return;
+        }
+        if (trxId > MAX_TRXID) {
+            Panic.panic(new RuntimeException("事务id已用完!"));
+        }
+        counterLock.lock();
+        try {
+            if (trxId - frozenTrxId > windowSize) {
+                while (backups > 0) {
+                    backupDone.awaitUninterruptibly();
+                }
+                freeze();
+                // 没有活跃事务时冻结事务ID推进到已分配的最大id，之后的id都没有分配过，可以直接冻结成aborted
+                if (frozenTrxId == trxIdCounter.get()) {
+                    freezeSkipped(trxId);
+                }
+            }
+        } finally {
+            counterLock.unlock();
+        }
+        if (trxId > trxIdLimit) {
+            reserveTrxIds(trxId);
+        }
+        trxIdCounter.accumulateAndGet(trxId, Math::max);
+    }
+
+    /**
+     * 把(frozenTrxId, trxId]按MAX_RUN一段追加到aborted列表，预留区间和冻结事务ID一起推进到trxId
+     * 调用方持有counterLock，且这些id都没有分配过
+     */
+    private void freezeSkipped(long trxId) {
+        long count = frozenAbortedCount;
+        try {
+            ByteBuffer runs = ByteBuffer.allocate(1 << 16);
+            long start = frozenTrxId + 1;
+            while (start <= trxId) {
+                int len = (int) Math.min(trxId - start + 1, MAX_RUN);
+                count += appendRun(runs, start, len, count);
+                start += len;
+            }
+            runs.flip();
+            count += appendFrozen(runs, count);
+            FsyncEvent.force(fileChannel, true, "trxId");
+            writeHeader(trxId, trxId, count);
+            FsyncEvent.force(fileChannel, true, "trxId");
+        } catch (IOException e) {
+            Panic.panic(e);
+        }
+        // checkTrxId先读trxIdLimit再读frozenTrxId，先推进冻结事务ID，跳过的id不会被映射到状态窗口
+        frozenAbortedCount = count;
+        frozenTrxId = trxId;
+        trxIdLimit = trxId;
+    }
+
+    /**
+     * 冻结事务ID，它及之前的事务都已结束
+     */
+    public long getFrozenTrxId() {
+        return frozenTrxId;
+    }
+
+    /**
+     * 在线备份事务ID文件，返回复制的字节数
+     * 在counterLock内只把文件头和aborted列表读进内存，然后在锁外依次写出文件头、状态窗口、aborted列表。
+     * 复制窗口期间冻结被推迟，窗口中副本文件头范围内的位置不会被复用；预留只写副本范围之外的位置，副本中按aborted处理。
+     * 状态窗口中同时提交的事务，副本中可能是提交或aborted，
+     * 所以必须在复制页面之后、复制日志之前调用：副本中已提交的事务，日志一定都在之后复制的日志中
+     * 限速的额度在加锁前申请，不在锁内等待
+     */
+    public long backup(WritableByteChannel target, RateLimiter limiter) throws IOException {
+        limiter.acquire(fileChannel.size());
+        ByteBuffer header = ByteBuffer.allocate(TRXID_HEADER_LENGTH);
+        ByteBuffer aborted;
+        counterLock.lock();
+        try {
+            header.putLong(trxIdLimit).putLong(frozenTrxId).putLong(frozenAbortedCount).putInt(windowSize).flip();
+            aborted = ByteBuffer.allocate(Math.toIntExact(frozenAbortedCount * FROZEN_ID_SIZE));
+            long position = getFrozenPosition(0);
+            while (aborted.hasRemaining()) {
+                if (fileChannel.read(aborted, position + aborted.position()) < 0) {
+                    break;
+                }
+            }
+            aborted.flip();
+            backups++;
+        } finally {
+            counterLock.unlock();
+        }
+        try {
+            long size = header.remaining() + (long) windowSize * TRXID_FIELD_SIZE + aborted.remaining();
+            writeFully(target, header);
+            long position = TRXID_HEADER_LENGTH;
+            long end = getFrozenPosition(0);
+            while (position < end) {
+                position += fileChannel.transferTo(position, end - position, target);
+            }
+            writeFully(target, aborted);
+            return size;
+        } finally {
+            counterLock.lock();
+            try {
+                if (--backups == 0) {
+                    backupDone.signalAll();
+                }
+            } finally {
+                counterLock.unlock();
+            }
+        }
+    }
+
+    private static void writeFully(WritableByteChannel target, ByteBuffer buf) throws IOException {
+        while (buf.hasRemaining()) {
+            target.write(buf);
+        }
+    }
+
     public void close() {
         try {
             fileChannel.close();
@@ -0,0 +1,173 @@
+package kangc.kkccdb.backend.server;
+
+import kangc.kkccdb.backend.common.MemoryGovernor;
+import kangc.kkccdb.backend.manager.data.DataManager;
+import kangc.kkccdb.backend.manager.data.dataItem.DataItem;
+import kangc.kkccdb.backend.manager.data.pageCache.PageCache;
+import kangc.kkccdb.backend.manager.index.BPlusTree;
+import kangc.kkccdb.backend.manager.transaction.TransactionManager;
+import kangc.kkccdb.utils.Panic;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 执行协议中的请求：B+树把key映射到数据项的uid，value保存在数据项中
+ * <p>
+ * 每次PUT在一个事务中插入新的数据项，提交后再把key指向它，因此GET只会读到已提交的value。
+ * 索引页还没有写日志，崩溃后索引可能丢失最近的修改。
+ * <p>
+ * 文件：path.trxId、path.db、path.log，以及索引文件path.idx
+ * <p>
+ * 数据和索引的页面缓存一共使用2 * memory字节，由内存调节器按各自的命中收益分配，开始时各一半。
+ */
+public class Executor {
+
+    public static final String TRXID_SUFFIX = ".trxId";
+    public static final String INDEX_SUFFIX = ".idx";
+
+    // 新建的索引文件中，第1页是根节点，第2页是元数据页
+    private static final int INDEX_META_PGNO = 2;
+
+    // 内存调节的周期
+    private static final long GOVERNOR_PERIOD_MILLIS = 1000;
+
+    private final TransactionManager tm;
+    private final DataManager dm;
+    private final PageCache indexPc;
+    private final BPlusTree index;
+    private final MemoryGovernor governor;
+
+    Executor(TransactionManager tm, DataManager dm, PageCache indexPc, BPlusTree index, long memory) {
+        this.tm = tm;
+        this.dm = dm;
+        this.indexPc = indexPc;
+        this.index = index;
+        // 每次移动1/16的初始容量
+        this.governor = new MemoryGovernor(2 * memory, Math.max(PageCache.PAGE_SIZE, memory / 16));
+        dm.register(governor);
+        indexPc.register(governor);
+        governor.start(GOVERNOR_PERIOD_MILLIS);
+    }
+
+    public static Executor create(String path, long memory) {
+        TransactionManager tm = TransactionManager.create(path + TRXID_SUFFIX);
+        DataManager dm = DataManager.create(path, memory);
+        PageCache indexPc = PageCache.create(path + INDEX_SUFFIX, memory);
+        if (BPlusTree.create(indexPc) != INDEX_META_PGNO) {
+            Panic.panic(new RuntimeException("索引文件损坏!"));
+        }
+        return new Executor(tm, dm, indexPc, BPlusTree.load(indexPc, INDEX_META_PGNO), memory);
+    }
+
+    public static Executor open(String path, long memory) {
+        return open(path, memory, false);
+    }
+
+    /**
+     * @param prewarm 是否在后台按上次关闭时的热点页面预热数据和索引的页面缓存
+     */
+    public static Executor open(String path, long memory, boolean prewarm) {
+        TransactionManager tm = TransactionManager.open(path + TRXID_SUFFIX);
+        DataManager dm = DataManager.open(path, memory, tm, prewarm);
+        PageCache indexPc = PageCache.open(path + INDEX_SUFFIX, memory);
+        if (prewarm) {
+            indexPc.prewarm();
+        }
+        return new Executor(tm, dm, indexPc, BPlusTree.load(indexPc, INDEX_META_PGNO), memory);
+    }
+
+    /**
+     * 执行一个请求，把响应帧写入out
+     */
+    public void execute(int requestId, byte op, ByteBuffer body, FrameWriter out) {
+        try {
+            switch (op) {
+                case Protocol.OP_PING:
+                    out.begin(requestId, Protocol.STATUS_OK);
+                    break;
+                case Protocol.OP_GET: {
+                    byte[] value = get(body.getLong());
+                    if (value == null) {
+                        out.begin(requestId, Protocol.STATUS_NOT_FOUND);
+                    } else {
+                        out.begin(requestId, Protocol.STATUS_OK).put(value);
+                    }
+                    break;
+                }
+                case Protocol.OP_PUT: {
+                    long key = body.getLong();
+                    byte[] value = new byte[body.remaining()];
+                    body.get(value);
+                    put(key, value);
+                    out.begin(requestId, Protocol.STATUS_OK);
+                    break;
+                }
+                default:
+                    throw new RuntimeException("未知的请求类型: " + op);
+            }
+        } catch (Exception e) {
+            String msg = e.getMessage() == null ? e.toString() : e.getMessage();
+            out.begin(requestId, Protocol.STATUS_ERROR).put(msg.getBytes(StandardCharsets.UTF_8));
+        }
+        out.end();
+    }
+
+    public byte[] get(long key) throws Exception {
+        long uid = index.search(key);
+        if (uid == BPlusTree.NOT_FOUND) {
+            return null;
+        }
+        DataItem di = dm.read(uid);
+        return di == null ? null : di.data();
+    }
+
+    /**
+     * 范围查询，返回key在[lo, hi]中的所有value，按key升序
+     */
+    public List<byte[]> scan(long lo, long hi) throws Exception {
+        List<Long> uids = index.searchRange(lo, hi);
+        List<byte[]> values = new ArrayList<>(uids.size());
+        for (long uid : uids) {
+            DataItem di = dm.read(uid);
+            if (di != null) {
+                values.add(di.data());
+            }
+        }
+        return values;
+    }
+
+    public void put(long key, byte[] value) throws Exception {
+        long xid = tm.begin();
+        long uid;
+        try {
+            uid = dm.insert(xid, value);
+        } catch (Exception e) {
+            tm.rollback(xid);
+            throw e;
+        }
+        tm.commit(xid);
+        index.insert(key, uid);
+    }
+
+    /**
+     * 保存数据和索引页面缓存中的热点页面，重启后用于预热，可以定期调用
+     */
+    public void saveHotPages() {
+        dm.saveHotPages();
+        indexPc.saveHotPages();
+    }
+
+    public MemoryGovernor getGovernor() {
+        return governor;
+    }
+
+    public void close() {
+        governor.close();
+        indexPc.close();
+        dm.close();
+        tm.close();
+    }
+}
@@ -0,0 +1,69 @@
+package kangc.kkccdb.backend.server;
+
+import java.nio.ByteBuffer;
+
+/**
+ * 把多个帧依次写入同一个缓冲区，一批响应（或请求）只需要一次write
+ */
+public class FrameWriter {
+
+    private ByteBuffer buf;
+
+    // 当前帧的起始位置
+    private int frameStart;
+
+    public FrameWriter(int capacity) {
+        buf = ByteBuffer.allocate(capacity);
+    }
+
+    /**
+     * 开始一个帧，写入帧头，Length在end()时回填
+     */
+    public FrameWriter begin(int requestId, byte type) {
+        ensure(Protocol.HEADER_SIZE);
+        frameStart = buf.position();
+        buf.putInt(0);
+        buf.putInt(requestId);
+        buf.put(type);
+        return this;
+    }
+
+    public FrameWriter putLong(long v) {
+        ensure(8);
+        buf.putLong(v);
+        return this;
+    }
+
+    public FrameWriter put(byte[] b) {
+        ensure(b.length);
+        buf.put(b);
+        return this;
+    }
+
+    public void end() {
+        buf.putInt(frameStart, buf.position() - frameStart - 4);
+    }
+
+    public boolean isEmpty() {
+        return buf.position() == 0;
+    }
+
+    /**
+     * 取出已写入的所有帧（可直接写入channel），之后写入新的缓冲区
+     */
+    public ByteBuffer drain() {
+        ByteBuffer out = buf;
+        out.flip();
+        buf = ByteBuffer.allocate(out.capacity());
+        return out;
+    }
+
+    private void ensure(int n) {
+        if (buf.remaining() < n) {
+            ByteBuffer bigger = ByteBuffer.allocate(Math.max(buf.capacity() << 1, buf.position() + n));
+            buf.flip();
+            bigger.put(buf);
+            buf = bigger;
+        }
+    }
+}
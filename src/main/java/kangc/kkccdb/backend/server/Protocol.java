@@ -0,0 +1,32 @@
+package kangc.kkccdb.backend.server;
+
+/**
+ * 客户端和服务端之间的二进制协议，每个消息是一个带长度前缀的帧
+ * <p>
+ * 请求：[Length 4B][RequestId 4B][Op 1B][Body]
+ * 响应：[Length 4B][RequestId 4B][Status 1B][Body]
+ * Length是后面的字节数，不含自身。
+ * <p>
+ * 客户端可以不等响应连续发送多个请求（pipelining），同一个连接上的响应按请求的顺序返回。
+ * <p>
+ * PING：Body为空，返回OK；
+ * GET：[Key 8B]，返回OK和Value，或NOT_FOUND；
+ * PUT：[Key 8B][Value]，返回OK；
+ * 出错时返回ERROR，Body是UTF-8编码的错误信息。
+ */
+public class Protocol {
+
+    public static final byte OP_PING = 0;
+    public static final byte OP_GET = 1;
+    public static final byte OP_PUT = 2;
+
+    public static final byte STATUS_OK = 0;
+    public static final byte STATUS_NOT_FOUND = 1;
+    public static final byte STATUS_ERROR = 2;
+
+    // 帧头：Length、RequestId、Op/Status
+    public static final int HEADER_SIZE = 9;
+
+    // 帧的最大长度，超过时关闭连接
+    public static final int MAX_FRAME_SIZE = 1 << 20;
+}
@@ -0,0 +1,308 @@
+package kangc.kkccdb.backend.server;
+
+import kangc.kkccdb.utils.Panic;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * TCP服务端，一个selector线程负责所有连接的读写，请求交给工作线程池执行
+ * <p>
+ * selector线程读到数据后，把缓冲区中所有完整的请求帧作为一批交给工作线程，
+ * 工作线程按顺序执行，把这一批的响应写入同一个缓冲区，再交回selector线程一次写出。
+ * 一个连接同时只有一批在执行，执行期间到达的请求攒成下一批，响应顺序和请求顺序一致。
+ * 客户端流水线发送的请求越多，每批越大，系统调用越少。
+ * <p>
+ * 客户端只发不收时，待写出的响应超过MAX_PENDING_OUTPUT就不再读取和执行这个连接的请求，写到阈值以下再继续，
+ * 服务端为一个连接缓存的响应不会无限增长。
+ */
+public class Server {
+
+    // 一个连接待写出的响应超过这么多字节时暂停读取
+    static final int MAX_PENDING_OUTPUT = 1 << 20;
+
+    private final int port;
+    private final Executor executor;
+    private final ExecutorService workers;
+
+    private Selector selector;
+    private ServerSocketChannel listener;
+    private Thread loop;
+    private volatile boolean running;
+
+    // 工作线程执行完一批、等待selector线程写出响应的连接
+    private final Queue<Connection> completed;
+
+    // 单个连接积压的待写出响应出现过的最大字节数，只由selector线程更新
+    private volatile long maxPendingOutput;
+
+    public Server(int port, Executor executor, int workerThreads) {
+        this.port = port;
+        this.executor = executor;
+        this.workers = Executors.newFixedThreadPool(workerThreads);
+        this.completed = new ConcurrentLinkedQueue<>();
+    }
+
+    /**
+     * 绑定端口，在后台线程中开始服务
+     */
+    public void start() {
+        try {
+            selector = Selector.open();
+            listener = ServerSocketChannel.open();
+            listener.bind(new InetSocketAddress(port));
+            listener.configureBlocking(false);
+            listener.register(selector, SelectionKey.OP_ACCEPT);
+        } catch (IOException e) {
+            Panic.panic(e);
+        }
+        running = true;
+        loop = new Thread(this::loop, "kkccdb-selector");
+        loop.start();
+    }
+
+    long maxPendingOutput() {
+        return maxPendingOutput;
+    }
+
+    /**
+     * 实际监听的端口，port为0时由系统分配
+     */
+    public int getPort() {
+        return listener.socket().getLocalPort();
+    }
+
+    public void close() {
+        running = false;
+        selector.wakeup();
+        try {
+            loop.join();
+            workers.shutdown();
+            workers.awaitTermination(10, TimeUnit.SECONDS);
+            for (SelectionKey key : selector.keys()) {
+                key.channel().close();
+            }
+            selector.close();
+        } catch (Exception e) {
+            Panic.panic(e);
+        }
+    }
+
+    private void loop() {
+        while (running) {
+            try {
+                selector.select();
+            } catch (IOException e) {
+                Panic.panic(e);
+            }
+            Connection conn;
+            while ((conn = completed.poll()) != null) {
+                conn.onBatchDone();
+            }
+            Iterator<SelectionKey> it = selector.selectedKeys().iterator();
+            while (it.hasNext()) {
+                SelectionKey key = it.next();
+                it.remove();
+                try {
+                    if (!key.isValid()) {
+                        continue;
+                    }
+                    if (key.isAcceptable()) {
+                        accept();
+                        continue;
+                    }
+                    conn = (Connection) key.attachment();
+                    if (key.isReadable()) {
+                        conn.onReadable();
+                    }
+                    if (key.isValid() && key.isWritable()) {
+                        conn.onWritable();
+                    }
+                } catch (IOException e) {
+                    // 客户端断开
+                    if (key.attachment() != null) {
+                        ((Connection) key.attachment()).close();
+                    }
+                }
+            }
+        }
+    }
+
+    private void accept() throws IOException {
+        SocketChannel ch;
+        while ((ch = listener.accept()) != null) {
+            ch.configureBlocking(false);
+            ch.socket().setTcpNoDelay(true);
+            Connection conn = new Connection(ch);
+            conn.key = ch.register(selector, SelectionKey.OP_READ, conn);
+        }
+    }
+
+    /**
+     * 一个客户端连接，除了execute()之外的方法都只在selector线程中调用
+     */
+    private class Connection {
+
+        private final SocketChannel ch;
+        private SelectionKey key;
+
+        // 已读入、尚未交给工作线程的数据
+        private ByteBuffer in;
+
+        // 等待写出的响应
+        private final ArrayDeque<ByteBuffer> out;
+
+        // out中还没写出的字节数
+        private long pending;
+
+        // 是否有一批请求正在执行
+        private boolean busy;
+
+        // 工作线程执行完的响应，由selector线程取走
+        private volatile ByteBuffer result;
+
+        Connection(SocketChannel ch) {
+            this.ch = ch;
+            in = ByteBuffer.allocate(64 * 1024);
+            out = new ArrayDeque<>();
+        }
+
+        void onReadable() throws IOException {
+            if (!in.hasRemaining()) {
+                if (busy) {
+                    // 缓冲区满时先不读，等这一批执行完，flush()会重新关注OP_READ
+                    key.interestOps(key.interestOps() & ~SelectionKey.OP_READ);
+                    return;
+                }
+                // 一个帧比缓冲区大
+                ByteBuffer bigger = ByteBuffer.allocate(in.capacity() << 1);
+                in.flip();
+                bigger.put(in);
+                in = bigger;
+            }
+            int n = ch.read(in);
+            if (n < 0) {
+                close();
+                return;
+            }
+            dispatch();
+        }
+
+        /**
+         * 把缓冲区中所有完整的帧作为一批交给工作线程
+         */
+        private void dispatch() {
+            if (busy || !ch.isOpen() || pending > MAX_PENDING_OUTPUT) {
+                return;
+            }
+            in.flip();
+            int end = 0;
+            while (in.limit() - end >= 4) {
+                int length = in.getInt(end);
+                if (length < Protocol.HEADER_SIZE - 4 || length > Protocol.MAX_FRAME_SIZE) {
+                    close();
+                    return;
+                }
+                if (in.limit() - end - 4 < length) {
+                    break;
+                }
+                end += 4 + length;
+            }
+            if (end == 0) {
+                in.compact();
+                return;
+            }
+            byte[] batch = new byte[end];
+            in.get(batch);
+            in.compact();
+            busy = true;
+            workers.execute(() -> execute(batch));
+        }
+
+        /**
+         * 在工作线程中按顺序执行一批请求
+         */
+        private void execute(byte[] batch) {
+            ByteBuffer buf = ByteBuffer.wrap(batch);
+            FrameWriter writer = new FrameWriter(256);
+            while (buf.hasRemaining()) {
+                int length = buf.getInt();
+                int next = buf.position() + length;
+                int requestId = buf.getInt();
+                byte op = buf.get();
+                ByteBuffer body = buf.slice();
+                body.limit(next - buf.position());
+                executor.execute(requestId, op, body, writer);
+                buf.position(next);
+            }
+            result = writer.drain();
+            completed.add(this);
+            selector.wakeup();
+        }
+
+        void onBatchDone() {
+            out.add(result);
+            pending += result.remaining();
+            result = null;
+            if (pending > maxPendingOutput) {
+                maxPendingOutput = pending;
+            }
+            busy = false;
+            try {
+                flush();
+            } catch (IOException e) {
+                close();
+                return;
+            }
+            // 执行期间到达的请求
+            dispatch();
+        }
+
+        /**
+         * 写出一部分响应后，积压降到阈值以下时继续执行缓冲区中的请求
+         */
+        void onWritable() throws IOException {
+            flush();
+            dispatch();
+        }
+
+        /**
+         * 尽量写出所有待发送的响应，写不完时关注OP_WRITE；积压超过阈值时不关注OP_READ
+         */
+        void flush() throws IOException {
+            if (!ch.isOpen()) {
+                return;
+            }
+            ByteBuffer[] bufs = out.toArray(new ByteBuffer[0]);
+            pending -= ch.write(bufs);
+            while (!out.isEmpty() && !out.peek().hasRemaining()) {
+                out.poll();
+            }
+            int ops = pending > MAX_PENDING_OUTPUT ? 0 : SelectionKey.OP_READ;
+            if (!out.isEmpty()) {
+                ops |= SelectionKey.OP_WRITE;
+            }
+            key.interestOps(ops);
+        }
+
+        void close() {
+            key.cancel();
+            try {
+                ch.close();
+            } catch (IOException ignored) {
+            }
+        }
+    }
+}
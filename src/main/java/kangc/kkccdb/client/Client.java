@@ -0,0 +1,155 @@
+package kangc.kkccdb.client;
+
+import kangc.kkccdb.backend.server.FrameWriter;
+import kangc.kkccdb.backend.server.Protocol;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * 阻塞式客户端，不是线程安全的
+ * <p>
+ * get/put/ping发送一个请求并等待响应；
+ * 流水线用法：多次调用sendXxx()把请求攒在缓冲区，flush()一次发出，再按顺序receive()同样次数。
+ */
+public class Client implements Closeable {
+
+    /**
+     * 一个响应
+     */
+    public static class Response {
+        public final int requestId;
+        public final byte status;
+        public final byte[] body;
+
+        Response(int requestId, byte status, byte[] body) {
+            this.requestId = requestId;
+            this.status = status;
+            this.body = body;
+        }
+    }
+
+    private final SocketChannel ch;
+    private final FrameWriter writer;
+    private ByteBuffer in;
+    private int nextRequestId;
+
+    public Client(String host, int port) throws IOException {
+        ch = SocketChannel.open(new InetSocketAddress(host, port));
+        ch.socket().setTcpNoDelay(true);
+        writer = new FrameWriter(4096);
+        in = ByteBuffer.allocate(64 * 1024);
+        in.flip();
+    }
+
+    public void ping() throws IOException {
+        sendPing();
+        flush();
+        check(receive());
+    }
+
+    /**
+     * key不存在时返回null
+     */
+    public byte[] get(long key) throws IOException {
+        sendGet(key);
+        flush();
+        Response r = receive();
+        if (r.status == Protocol.STATUS_NOT_FOUND) {
+            return null;
+        }
+        check(r);
+        return r.body;
+    }
+
+    public void put(long key, byte[] value) throws IOException {
+        sendPut(key, value);
+        flush();
+        check(receive());
+    }
+
+    public int sendPing() {
+        int id = nextRequestId++;
+        writer.begin(id, Protocol.OP_PING).end();
+        return id;
+    }
+
+    public int sendGet(long key) {
+        int id = nextRequestId++;
+        writer.begin(id, Protocol.OP_GET).putLong(key).end();
+        return id;
+    }
+
+    public int sendPut(long key, byte[] value) {
+        int id = nextRequestId++;
+        writer.begin(id, Protocol.OP_PUT).putLong(key).put(value).end();
+        return id;
+    }
+
+    /**
+     * 把攒下的请求一次写出
+     */
+    public void flush() throws IOException {
+        if (writer.isEmpty()) {
+            return;
+        }
+        ByteBuffer buf = writer.drain();
+        while (buf.hasRemaining()) {
+            ch.write(buf);
+        }
+    }
+
+    /**
+     * 读取下一个响应
+     */
+    public Response receive() throws IOException {
+        fill(4);
+        int length = in.getInt();
+        if (length < Protocol.HEADER_SIZE - 4 || length > Protocol.MAX_FRAME_SIZE) {
+            throw new IOException("响应帧长度错误: " + length);
+        }
+        fill(length);
+        int requestId = in.getInt();
+        byte status = in.get();
+        byte[] body = new byte[length - (Protocol.HEADER_SIZE - 4)];
+        in.get(body);
+        return new Response(requestId, status, body);
+    }
+
+    /**
+     * 保证缓冲区中至少有n个字节可读
+     */
+    private void fill(int n) throws IOException {
+        if (in.remaining() >= n) {
+            return;
+        }
+        in.compact();
+        if (in.capacity() < n) {
+            ByteBuffer bigger = ByteBuffer.allocate(n);
+            in.flip();
+            bigger.put(in);
+            in = bigger;
+        }
+        while (in.position() < n) {
+            if (ch.read(in) < 0) {
+                throw new IOException("连接已关闭");
+            }
+        }
+        in.flip();
+    }
+
+    private static void check(Response r) throws IOException {
+        if (r.status != Protocol.STATUS_OK) {
+            throw new IOException(new String(r.body, StandardCharsets.UTF_8));
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        ch.close();
+    }
+}
@@ -0,0 +1,150 @@
+package kangc.kkccdb.client;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * 本地压测客户端，报告每秒请求数和延迟分位数
+ * <p>
+ * 每个连接一个线程，每轮流水线发送pipeline个请求后一起等待响应，
+ * 一个请求的延迟是从这一轮发出到收到它的响应的时间。
+ * 先用PUT写入keys个key，再按readRatio混合GET和PUT。
+ */
+public class LoadClient {
+
+    private final String host;
+    private final int port;
+    private final int connections;
+    private final int pipeline;
+    private final int keys;
+    private final double readRatio;
+    private final int valueSize;
+
+    public LoadClient(String host, int port, int connections, int pipeline, int keys, double readRatio, int valueSize) {
+        this.host = host;
+        this.port = port;
+        this.connections = connections;
+        this.pipeline = pipeline;
+        this.keys = keys;
+        this.readRatio = readRatio;
+        this.valueSize = valueSize;
+    }
+
+    /**
+     * 所有连接一共发送requests个请求，返回结果
+     */
+    public Result run(int requests) throws Exception {
+        try (Client client = new Client(host, port)) {
+            for (int k = 0; k < keys; k += pipeline) {
+                for (int i = k; i < Math.min(keys, k + pipeline); i++) {
+                    client.sendPut(i, new byte[valueSize]);
+                }
+                client.flush();
+                for (int i = k; i < Math.min(keys, k + pipeline); i++) {
+                    client.receive();
+                }
+            }
+        }
+
+        int perConnection = requests / connections;
+        long[][] latencies = new long[connections][];
+        AtomicReference<Exception> error = new AtomicReference<>();
+        CountDownLatch done = new CountDownLatch(connections);
+        long start = System.nanoTime();
+        for (int c = 0; c < connections; c++) {
+            int id = c;
+            new Thread(() -> {
+                try {
+                    latencies[id] = runConnection(id, perConnection);
+                } catch (Exception e) {
+                    error.compareAndSet(null, e);
+                    latencies[id] = new long[0];
+                }
+                done.countDown();
+            }).start();
+        }
+        done.await();
+        long elapsed = System.nanoTime() - start;
+        if (error.get() != null) {
+            throw error.get();
+        }
+
+        int total = 0;
+        for (long[] l : latencies) {
+            total += l.length;
+        }
+        long[] all = new long[total];
+        int pos = 0;
+        for (long[] l : latencies) {
+            System.arraycopy(l, 0, all, pos, l.length);
+            pos += l.length;
+        }
+        Arrays.sort(all);
+        return new Result(total, elapsed, all);
+    }
+
+    private long[] runConnection(int id, int requests) throws Exception {
+        long[] latencies = new long[requests];
+        Random random = new Random(id);
+        byte[] value = new byte[valueSize];
+        try (Client client = new Client(host, port)) {
+            for (int done = 0; done < requests; ) {
+                int n = Math.min(pipeline, requests - done);
+                for (int i = 0; i < n; i++) {
+                    long key = random.nextInt(keys);
+                    if (random.nextDouble() < readRatio) {
+                        client.sendGet(key);
+                    } else {
+                        client.sendPut(key, value);
+                    }
+                }
+                long sent = System.nanoTime();
+                client.flush();
+                for (int i = 0; i < n; i++) {
+                    client.receive();
+                    latencies[done + i] = System.nanoTime() - sent;
+                }
+                done += n;
+            }
+        }
+        return latencies;
+    }
+
+    /**
+     * 压测结果，延迟单位为纳秒
+     */
+    public static class Result {
+        public final int requests;
+        public final long elapsedNanos;
+        private final long[] sortedLatencies;
+
+        Result(int requests, long elapsedNanos, long[] sortedLatencies) {
+            this.requests = requests;
+            this.elapsedNanos = elapsedNanos;
+            this.sortedLatencies = sortedLatencies;
+        }
+
+        public double requestsPerSecond() {
+            return requests * 1e9 / elapsedNanos;
+        }
+
+        /**
+         * p取0到100
+         */
+        public long percentile(double p) {
+            if (sortedLatencies.length == 0) {
+                return 0;
+            }
+            int i = (int) Math.ceil(p / 100 * sortedLatencies.length) - 1;
+            return sortedLatencies[Math.max(0, Math.min(i, sortedLatencies.length - 1))];
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%d 请求, %.0f 请求/秒, p50 %.3f ms, p99 %.3f ms", requests,
+                    requestsPerSecond(), percentile(50) / 1e6, percentile(99) / 1e6);
+        }
+    }
+}
@@ -0,0 +1,22 @@
+package kangc.kkccdb.utils;
+
+/**
+ * 可以返回给调用方处理的错误，不需要停机
+ */
+public class Errors {
+
+    // data
+    public static final RuntimeException DataTooLargeException = new RuntimeException("数据太大!");
+    public static final RuntimeException DataSizeMismatchException = new RuntimeException("更新前后数据大小不一致!");
+    public static final RuntimeException InvalidUidException = new RuntimeException("数据项不存在!");
+    public static final RuntimeException DatabaseBusyException = new RuntimeException("数据库繁忙!");
+
+    // transaction
+    public static final RuntimeException DeadlockException = new RuntimeException("检测到死锁!");
+    public static final RuntimeException TrxIdWindowFullException = new RuntimeException("事务状态窗口已满，存在运行时间过长的事务!");
+    public static final RuntimeException TooManyActiveTransactionsException = new RuntimeException("活跃事务过多!");
+
+    // index
+    public static final RuntimeException InvalidFillFactorException = new RuntimeException("填充因子必须在(0, 1]之间!");
+    public static final RuntimeException UnsortedKeyException = new RuntimeException("批量加载的key必须严格递增!");
+}
@@ -0,0 +1,83 @@
+package kangc.kkccdb.workload;
+
+/**
+ * 延迟直方图，和HdrHistogram一样按对数分段、段内线性分桶，记录是O(1)的，不保存原始样本
+ * <p>
+ * 值按最高位分段，每段再均分成SUB_BUCKETS个桶，桶宽和值的比例不超过1/SUB_BUCKETS，
+ * 分位数的相对误差小于1%。不是线程安全的，每个线程记录自己的直方图，最后用add()合并。
+ */
+public class Histogram {
+
+    // 每段的桶数是2^SUB_BITS
+    private static final int SUB_BITS = 7;
+    private static final int SUB_BUCKETS = 1 << SUB_BITS;
+
+    // 第0段覆盖[0, 2 * SUB_BUCKETS)，之后每段覆盖[2^k, 2^(k+1))的后一半桶
+    private final long[] counts = new long[(64 - SUB_BITS + 1) * SUB_BUCKETS];
+    private long total;
+    private long max;
+    private long sum;
+
+    public void record(long value) {
+        if (value < 0) {
+            value = 0;
+        }
+        counts[index(value)]++;
+        total++;
+        sum += value;
+        max = Math.max(max, value);
+    }
+
+    public void add(Histogram other) {
+        for (int i = 0; i < counts.length; i++) {
+            counts[i] += other.counts[i];
+        }
+        total += other.total;
+        sum += other.sum;
+        max = Math.max(max, other.max);
+    }
+
+    public long count() {
+        return total;
+    }
+
+    public long max() {
+        return max;
+    }
+
+    public double mean() {
+        return total == 0 ? 0 : (double) sum / total;
+    }
+
+    /**
+     * p取0到100，返回第一个累计数量达到p%的桶中最大的值
+     */
+    public long percentile(double p) {
+        if (total == 0) {
+            return 0;
+        }
+        long target = Math.max(1, (long) Math.ceil(p / 100 * total));
+        long seen = 0;
+        for (int i = 0; i < counts.length; i++) {
+            seen += counts[i];
+            if (seen >= target) {
+                return Math.min(highestEquivalent(i), max);
+            }
+        }
+        return max;
+    }
+
+    static int index(long value) {
+        int shift = Math.max(0, 63 - Long.numberOfLeadingZeros(value) - SUB_BITS);
+        return (shift << SUB_BITS) + (int) (value >>> shift);
+    }
+
+    /**
+     * 落在第i个桶中的最大值
+     */
+    static long highestEquivalent(int i) {
+        int shift = Math.max(0, (i >> SUB_BITS) - 1);
+        long sub = i - ((long) shift << SUB_BITS);
+        return ((sub + 1) << shift) - 1;
+    }
+}
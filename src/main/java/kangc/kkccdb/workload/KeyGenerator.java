@@ -0,0 +1,25 @@
+package kangc.kkccdb.workload;
+
+import java.util.SplittableRandom;
+
+/**
+ * 按某种分布生成[0, n)中的key，实现类没有可变状态，多个线程可以共用，随机数由调用方的线程自己持有
+ */
+public interface KeyGenerator {
+
+    long next(SplittableRandom random);
+
+    /**
+     * 均匀分布
+     */
+    public static KeyGenerator uniform(long n) {
+        return random -> random.nextLong(n);
+    }
+
+    /**
+     * Zipfian分布，theta越大越集中，YCSB默认0.99
+     */
+    public static KeyGenerator zipfian(long n, double theta) {
+        return new ZipfianKeyGenerator(n, theta);
+    }
+}
@@ -0,0 +1,151 @@
+package kangc.kkccdb.workload;
+
+/**
+ * 负载的参数，用key=value的形式给出，没有给出的用默认值
+ * <p>
+ * records=10000          预先写入的记录数，key为[0, records)
+ * operations=100000      所有线程一共执行的操作数
+ * warmup=10000           正式计时前每个线程分摊执行的预热操作数，不计入结果
+ * threads=4              线程数
+ * read=0.95              读、写、扫描的比例，按三者之和归一化
+ * write=0.05
+ * scan=0
+ * scanLength=100         一次扫描的key个数
+ * distribution=zipfian   key的分布，zipfian或uniform
+ * theta=0.99             zipfian分布的参数
+ * ratio=1                数据量和缓存大小之比，大于1时数据放不进缓存
+ * valueSize=100          value的字节数
+ * seed=1                 随机数种子，相同的参数和种子产生相同的操作序列
+ * prewarm=false          重新打开时是否按写入阶段结束时的热点页面预热缓存
+ */
+public class Workload {
+
+    public final int records;
+    public final long operations;
+    public final long warmup;
+    public final int threads;
+    public final double read;
+    public final double write;
+    public final double scan;
+    public final int scanLength;
+    public final String distribution;
+    public final double theta;
+    public final double ratio;
+    public final int valueSize;
+    public final long seed;
+    public final boolean prewarm;
+
+    private Workload(int records, long operations, long warmup, int threads, double read, double write, double scan,
+                     int scanLength, String distribution, double theta, double ratio, int valueSize, long seed,
+                     boolean prewarm) {
+        this.records = records;
+        this.operations = operations;
+        this.warmup = warmup;
+        this.threads = threads;
+        double sum = read + write + scan;
+        this.read = read / sum;
+        this.write = write / sum;
+        this.scan = scan / sum;
+        this.scanLength = scanLength;
+        this.distribution = distribution;
+        this.theta = theta;
+        this.ratio = ratio;
+        this.valueSize = valueSize;
+        this.seed = seed;
+        this.prewarm = prewarm;
+    }
+
+    /**
+     * 解析key=value形式的参数
+     */
+    public static Workload parse(String... args) {
+        int records = 10000;
+        long operations = 100000;
+        long warmup = -1;
+        int threads = 4;
+        double read = 0.95;
+        double write = 0.05;
+        double scan = 0;
+        int scanLength = 100;
+        String distribution = "zipfian";
+        double theta = 0.99;
+        double ratio = 1;
+        int valueSize = 100;
+        long seed = 1;
+        boolean prewarm = false;
+        for (String arg : args) {
+            int eq = arg.indexOf('=');
+            if (eq < 0) {
+                throw new IllegalArgumentException("参数格式应为key=value: " + arg);
+            }
+            String key = arg.substring(0, eq);
+            String value = arg.substring(eq + 1);
+            switch (key) {
+                case "records":
+                    records = Integer.parseInt(value);
+                    break;
+                case "operations":
+                    operations = Long.parseLong(value);
+                    break;
+                case "warmup":
+                    warmup = Long.parseLong(value);
+                    break;
+                case "threads":
+                    threads = Integer.parseInt(value);
+                    break;
+                case "read":
+                    read = Double.parseDouble(value);
+                    break;
+                case "write":
+                    write = Double.parseDouble(value);
+                    break;
+                case "scan":
+                    scan = Double.parseDouble(value);
+                    break;
+                case "scanLength":
+                    scanLength = Integer.parseInt(value);
+                    break;
+                case "distribution":
+                    distribution = value;
+                    break;
+                case "theta":
+                    theta = Double.parseDouble(value);
+                    break;
+                case "ratio":
+                    ratio = Double.parseDouble(value);
+                    break;
+                case "valueSize":
+                    valueSize = Integer.parseInt(value);
+                    break;
+                case "seed":
+                    seed = Long.parseLong(value);
+                    break;
+                case "prewarm":
+                    prewarm = Boolean.parseBoolean(value);
+                    break;
+                default:
+                    throw new IllegalArgumentException("未知的参数: " + key);
+            }
+        }
+        if (!"zipfian".equals(distribution) && !"uniform".equals(distribution)) {
+            throw new IllegalArgumentException("未知的key分布: " + distribution);
+        }
+        if (records <= 0 || threads <= 0 || read < 0 || write < 0 || scan < 0 || read + write + scan <= 0
+                || scanLength <= 0 || ratio <= 0 || valueSize < 8) {
+            throw new IllegalArgumentException("参数不合法");
+        }
+        return new Workload(records, operations, warmup < 0 ? operations / 10 : warmup, threads, read, write, scan,
+                scanLength, distribution, theta, ratio, valueSize, seed, prewarm);
+    }
+
+    KeyGenerator keyGenerator() {
+        return "uniform".equals(distribution) ? KeyGenerator.uniform(records) : KeyGenerator.zipfian(records, theta);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("records=%d operations=%d threads=%d read=%.2f write=%.2f scan=%.2f scanLength=%d " +
+                        "distribution=%s ratio=%.2f valueSize=%d prewarm=%b", records, operations, threads, read, write, scan,
+                scanLength, distribution, ratio, valueSize, prewarm);
+    }
+}
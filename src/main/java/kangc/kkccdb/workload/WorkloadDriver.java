@@ -0,0 +1,253 @@
+package kangc.kkccdb.workload;
+
+import kangc.kkccdb.backend.common.Codec;
+import kangc.kkccdb.backend.manager.data.DataManagerImpl;
+import kangc.kkccdb.backend.manager.data.pageCache.PageCache;
+import kangc.kkccdb.backend.server.Executor;
+
+import java.io.File;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * 类似YCSB的端到端负载，直接在本进程中的Executor上执行，不经过网络
+ * <p>
+ * 先用大缓存写入records条记录并关闭；再按ratio算出缓存大小重新打开，
+ * 这时缓存是冷的（prewarm=true时后台按写入阶段的热点页面预热），每个线程先执行预热操作，再执行正式计时的操作。
+ * 每个线程为每种操作记录自己的延迟直方图，结束后合并，线程之间不共享可变状态。
+ * <p>
+ * 读：按key读一条记录；写：覆盖一条已有记录；扫描：从某个key开始读scanLength条。
+ */
+public class WorkloadDriver {
+
+    // 写入阶段每个缓存的大小
+    private static final long LOAD_MEMORY = 64L << 20;
+
+    // 每个缓存至少的页数，PageCache要求不少于10页
+    private static final int MIN_CACHE_PAGES = 16;
+
+    public enum Operation {
+        READ, WRITE, SCAN
+    }
+
+    private final Workload workload;
+
+    public WorkloadDriver(Workload workload) {
+        this.workload = workload;
+    }
+
+    /**
+     * 在path上新建数据库并执行负载，path下的文件必须不存在
+     */
+    public Result run(String path) throws Exception {
+        Executor executor = Executor.create(path, LOAD_MEMORY);
+        try {
+            parallel(id -> {
+                byte[] value = new byte[workload.valueSize];
+                for (long key = id; key < workload.records; key += workload.threads) {
+                    Codec.putLong(value, 0, key);
+                    executor.put(key, value);
+                }
+            });
+        } finally {
+            executor.close();
+        }
+
+        // 数据页和索引页各有一个缓存，两个缓存一共是数据量的1/ratio
+        long dataBytes = new File(path + DataManagerImpl.DB_SUFFIX).length()
+                + new File(path + Executor.INDEX_SUFFIX).length();
+        long memory = Math.max((long) MIN_CACHE_PAGES * PageCache.PAGE_SIZE, (long) (dataBytes / workload.ratio / 2));
+
+        Executor db = Executor.open(path, memory, workload.prewarm);
+        KeyGenerator keys = workload.keyGenerator();
+        Histogram[][] histograms = new Histogram[workload.threads][];
+        AtomicLong misses = new AtomicLong();
+        long elapsed;
+        String allocation;
+        try {
+            CountDownLatch warmedUp = new CountDownLatch(workload.threads);
+            AtomicLong start = new AtomicLong();
+            parallel(id -> {
+                SplittableRandom random = new SplittableRandom(workload.seed * 31 + id);
+                Worker worker = new Worker(db, keys, random);
+                worker.run(share(workload.warmup, id), null);
+                warmedUp.countDown();
+                warmedUp.await();
+                start.compareAndSet(0, System.nanoTime());
+                Histogram[] h = {new Histogram(), new Histogram(), new Histogram()};
+                worker.run(share(workload.operations, id), h);
+                histograms[id] = h;
+                misses.addAndGet(worker.misses);
+            });
+            elapsed = System.nanoTime() - start.get();
+            allocation = db.getGovernor().toString();
+        } finally {
+            db.close();
+        }
+
+        Histogram[] merged = new Histogram[Operation.values().length];
+        for (int op = 0; op < merged.length; op++) {
+            merged[op] = new Histogram();
+            for (Histogram[] h : histograms) {
+                merged[op].add(h[op]);
+            }
+        }
+        return new Result(workload, dataBytes, memory, allocation, elapsed, merged, misses.get());
+    }
+
+    /**
+     * 第id个线程分到的操作数
+     */
+    private long share(long total, int id) {
+        return total / workload.threads + (id < total % workload.threads ? 1 : 0);
+    }
+
+    private interface Task {
+        void run(int id) throws Exception;
+    }
+
+    /**
+     * 用threads个线程执行task，等待全部结束，有异常时抛出第一个
+     */
+    private void parallel(Task task) throws Exception {
+        AtomicReference<Exception> error = new AtomicReference<>();
+        Thread[] threads = new Thread[workload.threads];
+        for (int i = 0; i < threads.length; i++) {
+            int id = i;
+            threads[i] = new Thread(() -> {
+                try {
+                    task.run(id);
+                } catch (Exception e) {
+                    error.compareAndSet(null, e);
+                }
+            }, "kkccdb-workload-" + i);
+            threads[i].start();
+        }
+        for (Thread t : threads) {
+            t.join();
+        }
+        if (error.get() != null) {
+            throw error.get();
+        }
+    }
+
+    private class Worker {
+
+        private final Executor db;
+        private final KeyGenerator keys;
+        private final SplittableRandom random;
+        private final byte[] value;
+
+        // 读不到预先写入的key的次数，正常应该是0
+        long misses;
+
+        Worker(Executor db, KeyGenerator keys, SplittableRandom random) {
+            this.db = db;
+            this.keys = keys;
+            this.random = random;
+            this.value = new byte[workload.valueSize];
+        }
+
+        /**
+         * 执行n个操作，histograms为null时不记录延迟
+         */
+        void run(long n, Histogram[] histograms) throws Exception {
+            for (long i = 0; i < n; i++) {
+                double p = random.nextDouble();
+                long key = keys.next(random);
+                Operation op = p < workload.read ? Operation.READ
+                        : p < workload.read + workload.write ? Operation.WRITE : Operation.SCAN;
+                long begin = System.nanoTime();
+                switch (op) {
+                    case READ: {
+                        byte[] v = db.get(key);
+                        if (v == null || Codec.getLong(v, 0) != key) {
+                            misses++;
+                        }
+                        break;
+                    }
+                    case WRITE:
+                        Codec.putLong(value, 0, key);
+                        db.put(key, value);
+                        break;
+                    case SCAN: {
+                        long hi = Math.min(workload.records - 1, key + workload.scanLength - 1);
+                        List<byte[]> values = db.scan(key, hi);
+                        if (values.size() != hi - key + 1) {
+                            misses++;
+                        }
+                        break;
+                    }
+                }
+                if (histograms != null) {
+                    histograms[op.ordinal()].record(System.nanoTime() - begin);
+                }
+            }
+        }
+    }
+
+    /**
+     * 负载的结果，延迟单位为纳秒
+     */
+    public static class Result {
+        public final Workload workload;
+        public final long dataBytes;
+        public final long cacheBytes;
+        // 结束时内存调节器给各缓存的分配
+        public final String allocation;
+        public final long elapsedNanos;
+        public final long misses;
+        private final Histogram[] histograms;
+
+        Result(Workload workload, long dataBytes, long cacheBytes, String allocation, long elapsedNanos,
+               Histogram[] histograms, long misses) {
+            this.workload = workload;
+            this.dataBytes = dataBytes;
+            this.cacheBytes = cacheBytes;
+            this.allocation = allocation;
+            this.elapsedNanos = elapsedNanos;
+            this.histograms = histograms;
+            this.misses = misses;
+        }
+
+        public Histogram histogram(Operation op) {
+            return histograms[op.ordinal()];
+        }
+
+        public long operations() {
+            long n = 0;
+            for (Histogram h : histograms) {
+                n += h.count();
+            }
+            return n;
+        }
+
+        public double operationsPerSecond() {
+            return operations() * 1e9 / elapsedNanos;
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder sb = new StringBuilder();
+            sb.append(workload).append('\n');
+            sb.append(String.format("数据 %.1f MB, 缓存 2 x %.1f MB (结束时 %s), %d 操作, %.0f 操作/秒%n",
+                    dataBytes / 1048576.0, cacheBytes / 1048576.0, allocation, operations(), operationsPerSecond()));
+            for (Operation op : Operation.values()) {
+                Histogram h = histogram(op);
+                if (h.count() == 0) {
+                    continue;
+                }
+                sb.append(String.format("%-5s %9d 次, 平均 %8.3f ms, p50 %8.3f ms, p99 %8.3f ms, p999 %8.3f ms, " +
+                                "max %8.3f ms%n", op, h.count(), h.mean() / 1e6, h.percentile(50) / 1e6,
+                        h.percentile(99) / 1e6, h.percentile(99.9) / 1e6, h.max() / 1e6));
+            }
+            if (misses > 0) {
+                sb.append("未读到的key: ").append(misses).append('\n');
+            }
+            return sb.toString();
+        }
+    }
+}
@@ -0,0 +1,72 @@
+package kangc.kkccdb.workload;
+
+import java.math.BigInteger;
+import java.util.SplittableRandom;
+
+/**
+ * Zipfian分布，算法来自Gray等人的"Quickly Generating Billion-Record Synthetic Databases"，和YCSB相同
+ * <p>
+ * 先生成热度排名rank，rank为0的最热；再把rank乘以一个和n互素的大数取模，映射成key。
+ * 这是[0, n)上的一一映射，分布不变，但最热的key不会挤在相邻的几个页面里。
+ */
+class ZipfianKeyGenerator implements KeyGenerator {
+
+    // 黄金分割比例对应的常数，取模后在[0, n)中分布得比较散
+    private static final long MULTIPLIER = 0x9E3779B97F4A7C15L >>> 1;
+
+    private final long n;
+    private final double theta;
+    private final double zetan;
+    private final double alpha;
+    private final double eta;
+    private final long multiplier;
+
+    ZipfianKeyGenerator(long n, double theta) {
+        if (n <= 0 || n > Integer.MAX_VALUE || theta <= 0 || theta >= 1) {
+            throw new IllegalArgumentException("n必须在(0, 2^31)之间，theta必须在(0, 1)之间");
+        }
+        this.n = n;
+        this.theta = theta;
+        this.zetan = zeta(n, theta);
+        double zeta2 = 1 + Math.pow(0.5, theta);
+        this.alpha = 1 / (1 - theta);
+        this.eta = (1 - Math.pow(2.0 / n, 1 - theta)) / (1 - zeta2 / zetan);
+
+        // 找一个和n互素的乘数，rank * multiplier mod n才是一一映射
+        long m = MULTIPLIER % n;
+        while (n > 1 && BigInteger.valueOf(m).gcd(BigInteger.valueOf(n)).longValue() != 1) {
+            m = (m + 1) % n;
+        }
+        this.multiplier = m;
+    }
+
+    private static double zeta(long n, double theta) {
+        double sum = 0;
+        for (long i = 1; i <= n; i++) {
+            sum += 1 / Math.pow(i, theta);
+        }
+        return sum;
+    }
+
+    /**
+     * 热度排名，0最热
+     */
+    long nextRank(SplittableRandom random) {
+        double u = random.nextDouble();
+        double uz = u * zetan;
+        if (uz < 1) {
+            return 0;
+        }
+        if (uz < 1 + Math.pow(0.5, theta)) {
+            return 1;
+        }
+        long rank = (long) (n * Math.pow(eta * u - eta + 1, alpha));
+        return Math.min(rank, n - 1);
+    }
+
+    @Override
+    public long next(SplittableRandom random) {
+        // rank和multiplier都小于n，n不超过int范围，乘积不会溢出
+        return nextRank(random) * multiplier % n;
+    }
+}
@@ -0,0 +1,78 @@
+package kangc.kkccdb.backend.common;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+public class CodecTest {
+
+    @Test
+    public void testFixedWidth() {
+        byte[] b = new byte[32];
+        Codec.putShort(b, 1, (short) -2);
+        Codec.putInt(b, 3, 0x01020304);
+        Codec.putLong(b, 7, Long.MIN_VALUE + 5);
+        assertEquals(-2, Codec.getShort(b, 1));
+        assertEquals(0x01020304, Codec.getInt(b, 3));
+        assertEquals(Long.MIN_VALUE + 5, Codec.getLong(b, 7));
+        // 和ByteBuffer、Parser的字节序一致
+        assertEquals(0x01020304, ByteBuffer.wrap(b).getInt(3));
+        assertArrayEquals(Parser.long2Byte(Long.MIN_VALUE + 5), java.util.Arrays.copyOfRange(b, 7, 15));
+    }
+
+    @Test
+    public void testBulk() {
+        short[] shorts = {1, -1, Short.MAX_VALUE};
+        int[] ints = {7, Integer.MIN_VALUE, 0, 42};
+        long[] longs = {Long.MAX_VALUE, -3};
+        byte[] b = new byte[64];
+        Codec.putShorts(b, 0, shorts, 0, 3);
+        Codec.putInts(b, 6, ints, 0, 4);
+        Codec.putLongs(b, 22, longs, 0, 2);
+
+        short[] s2 = new short[3];
+        int[] i2 = new int[5];
+        long[] l2 = new long[2];
+        Codec.getShorts(b, 0, s2, 0, 3);
+        Codec.getInts(b, 6, i2, 1, 4);
+        Codec.getLongs(b, 22, l2, 0, 2);
+        assertArrayEquals(shorts, s2);
+        assertArrayEquals(new int[]{0, 7, Integer.MIN_VALUE, 0, 42}, i2);
+        assertArrayEquals(longs, l2);
+    }
+
+    @Test
+    public void testVarint() {
+        long[] values = {0, 1, 127, 128, 300, -1, -64, 65, Integer.MAX_VALUE, Long.MAX_VALUE, Long.MIN_VALUE};
+        Random random = new Random(3);
+        byte[] b = new byte[Codec.MAX_VAR_LONG_SIZE * 2];
+        ByteBuffer buf = ByteBuffer.allocate(Codec.MAX_VAR_LONG_SIZE * 2);
+        for (int i = 0; i < values.length + 1000; i++) {
+            long v = i < values.length ? values[i] : random.nextLong() >> random.nextInt(64);
+
+            int end = Codec.putVarLong(b, 1, v);
+            assertEquals(Codec.varLongSize(v), end - 1);
+            assertEquals(v, Codec.getVarLong(b, 1));
+
+            end = Codec.putSignedVarLong(b, 1, v);
+            assertEquals(Codec.varLongSize(Codec.zigzag(v)), end - 1);
+            assertEquals(v, Codec.getSignedVarLong(b, 1));
+
+            buf.clear();
+            Codec.putVarLong(buf, v);
+            Codec.putSignedVarLong(buf, v);
+            buf.flip();
+            assertEquals(v, Codec.getVarLong(buf));
+            assertEquals(v, Codec.getSignedVarLong(buf));
+            assertEquals(0, buf.remaining());
+        }
+        assertEquals(1, Codec.varLongSize(0));
+        assertEquals(1, Codec.varLongSize(Codec.zigzag(-1)));
+        assertEquals(2, Codec.varLongSize(128));
+        assertEquals(10, Codec.varLongSize(-1));
+    }
+}
@@ -0,0 +1,251 @@
+package kangc.kkccdb.backend.common;
+
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import org.junit.Test;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class MemoryGovernorTest {
+
+    @Test
+    public void testResize() throws Exception {
+        CountingCache cache = new CountingCache(10);
+        cache.trackGhosts(4);
+        for (long i = 0; i < 10; i++) {
+            cache.get(i);
+        }
+        cache.get(0);
+        cache.resize(4);
+        assertEquals(6, cache.released);
+        assertEquals(4, cache.capacity());
+        // 留下的是最近访问的
+        assertTrue(cache.peek(0) != null && cache.peek(9) != null && cache.peek(1) == null);
+        cache.resize(6);
+        for (long i = 20; i < 30; i++) {
+            cache.get(i);
+        }
+        assertEquals(6 + 8, cache.released);
+
+        // 影子命中：最近淘汰的4个key是20到23
+        long misses = cache.misses();
+        cache.get(20);
+        cache.get(23);
+        cache.get(100);
+        assertEquals(2, cache.ghostHits());
+        assertEquals(misses + 3, cache.misses());
+    }
+
+    /**
+     * 缩容的写回在缓存锁外进行：写回期间其它线程能访问缓存，正在写回的key要等写回完成才重新加载
+     */
+    @Test
+    public void testResizeOutsideLock() throws Exception {
+        SlowCache cache = new SlowCache(64);
+        for (long i = 0; i < 64; i++) {
+            cache.get(i);
+        }
+        Thread shrink = new Thread(() -> cache.resize(4));
+        shrink.start();
+        Random random = new Random(1);
+        int gets = 0;
+        while (shrink.isAlive()) {
+            cache.get(random.nextInt(64));
+            cache.release(random.nextInt(64));
+            gets++;
+        }
+        shrink.join();
+        assertFalse(cache.stale);
+        assertTrue(gets > 0);
+        assertEquals(4, cache.capacity());
+    }
+
+    @Test
+    public void testRebalance() throws Exception {
+        CountingCache big = new CountingCache(1);
+        CountingCache small = new CountingCache(1);
+        // 预算100项，每步移动10项，每个缓存至少10项
+        MemoryGovernor governor = new MemoryGovernor(100, 10);
+        governor.register("big", big, 1, 10);
+        governor.register("small", small, 1, 10);
+        assertEquals(50, big.capacity());
+        assertEquals(50, small.capacity());
+
+        // big的工作集是80个key，small只有10个
+        Random random = new Random(1);
+        for (int round = 0; round < 20; round++) {
+            for (int i = 0; i < 2000; i++) {
+                big.get(random.nextInt(80));
+                small.get(random.nextInt(10));
+            }
+            governor.rebalance();
+            assertTrue(big.capacity() + small.capacity() <= 100);
+        }
+        assertTrue(big.capacity() >= 80);
+        assertTrue(small.capacity() >= 10);
+        assertEquals(big.capacity(), governor.allocation(big));
+
+        // 没有影子命中时不再移动
+        for (int i = 0; i < 1000; i++) {
+            small.get(random.nextInt(10));
+        }
+        governor.rebalance();
+        governor.rebalance();
+        assertFalse(governor.rebalance());
+
+        // 缩小预算，重新平分
+        governor.setBudget(40);
+        assertEquals(20, big.capacity());
+        assertEquals(20, small.capacity());
+        governor.unregister(small);
+        assertEquals(40, big.capacity());
+    }
+
+    private static class CountingCache extends AbstractCacheLru<Long> {
+
+        int released;
+
+        CountingCache(int maxResource) {
+            super(maxResource);
+        }
+
+        @Override
+        protected Long getForCache(long key) {
+            return key;
+        }
+
+        @Override
+        protected void releaseForCache(Long obj) {
+            released++;
+        }
+    }
+
+    /**
+     * 缩容写回期间peek正在写回的key会等待，不会在数据写到外界之前报告它不在缓存中
+     */
+    @Test
+    public void testPeekWaitsForResizeWriteBack() throws Exception {
+        CountDownLatch writing = new CountDownLatch(1);
+        CountDownLatch proceed = new CountDownLatch(1);
+        CountingCache cache = new CountingCache(4) {
+            @Override
+            protected void releaseForCache(Long obj) {
+                writing.countDown();
+                try {
+                    proceed.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                super.releaseForCache(obj);
+            }
+        };
+        for (long i = 0; i < 4; i++) {
+            cache.get(i);
+        }
+        Thread shrink = new Thread(() -> cache.resize(1));
+        shrink.start();
+        writing.await();
+        Long[] peeked = new Long[1];
+        Thread peek = new Thread(() -> peeked[0] = cache.peek(0));
+        peek.start();
+        peek.join(100);
+        // key 0正在写回，peek还在等
+        assertTrue(peek.isAlive());
+        // 其它key不受影响
+        assertEquals(3L, (long) cache.peek(3));
+        proceed.countDown();
+        peek.join();
+        shrink.join();
+        assertNull(peeked[0]);
+        assertEquals(3, cache.released);
+    }
+
+    /**
+     * 后台调节中某一轮抛出异常，之后的轮次照常进行
+     */
+    @Test
+    public void testScheduledRebalanceSurvivesException() throws Exception {
+        CountingCache big = new CountingCache(1);
+        CountingCache small = new CountingCache(1) {
+            boolean failed;
+
+            @Override
+            protected void releaseForCache(Long obj) {
+                if (!failed) {
+                    failed = true;
+                    throw new IllegalStateException("写回失败");
+                }
+                super.releaseForCache(obj);
+            }
+        };
+        MemoryGovernor governor = new MemoryGovernor(100, 10);
+        governor.register("big", big, 1, 10);
+        governor.register("small", small, 1, 10);
+        for (long i = 0; i < 50; i++) {
+            small.get(i);
+        }
+        Path dump = Files.createTempFile("kkccdb", ".jfr");
+        try (Recording recording = new Recording()) {
+            recording.enable("kkccdb.RebalanceFailure");
+            recording.start();
+            governor.start(1);
+            Random random = new Random(1);
+            long deadline = System.nanoTime() + 5_000_000_000L;
+            while (big.capacity() <= 50 && System.nanoTime() < deadline) {
+                big.get(random.nextInt(80));
+            }
+            governor.close();
+            recording.stop();
+            recording.dump(dump);
+        }
+        List<RecordedEvent> events = RecordingFile.readAllEvents(dump);
+        Files.delete(dump);
+        // 第一次缩小small时抛出异常，记成一个事件，之后的一轮成功把内存移给了big
+        assertTrue(big.capacity() > 50);
+        assertTrue(small.released > 0);
+        assertEquals(1, events.size());
+        assertEquals(IllegalStateException.class.getName(), events.get(0).getString("exception"));
+        assertEquals("写回失败", events.get(0).getString("message"));
+    }
+
+    private static class SlowCache extends AbstractCacheLru<Long> {
+
+        final Set<Long> writing = ConcurrentHashMap.newKeySet();
+        volatile boolean stale;
+
+        SlowCache(int maxResource) {
+            super(maxResource);
+        }
+
+        @Override
+        protected Long getForCache(long key) {
+            if (writing.contains(key)) {
+                stale = true;
+            }
+            return key;
+        }
+
+        @Override
+        protected void releaseForCache(Long obj) {
+            writing.add(obj);
+            try {
+                Thread.sleep(1);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            writing.remove(obj);
+        }
+    }
+}
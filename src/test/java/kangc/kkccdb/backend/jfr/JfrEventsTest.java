@@ -0,0 +1,137 @@
+package kangc.kkccdb.backend.jfr;
+
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import kangc.kkccdb.backend.common.AbstractCacheLru;
+import kangc.kkccdb.backend.manager.data.DataManager;
+import kangc.kkccdb.backend.manager.data.page.Page;
+import kangc.kkccdb.backend.manager.data.pageCache.PageCache;
+import kangc.kkccdb.backend.manager.transaction.TransactionManager;
+import org.junit.Test;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class JfrEventsTest {
+
+    @Test
+    public void testEvents() throws Exception {
+        String dbPath = "/tmp/jfr_test.db";
+        String trxPath = "/tmp/jfr_test.trxId";
+        new File(dbPath).delete();
+        new File(trxPath).delete();
+        String dmPath = "/tmp/jfr_test_dm";
+        clean(dmPath);
+        Path dump = Files.createTempFile("kkccdb", ".jfr");
+
+        try (Recording recording = new Recording()) {
+            for (String name : new String[]{"PageRead", "PageFlush", "Fsync", "CacheWait",
+                    "TransactionBegin", "CounterLock", "Recovery"}) {
+                recording.enable("kkccdb." + name).withThreshold(Duration.ZERO);
+            }
+            recording.start();
+
+            // 缓存只有10页，读第11页时淘汰并写回脏页
+            PageCache pc = PageCache.create(dbPath, 10 * PageCache.PAGE_SIZE);
+            for (int i = 0; i < 11; i++) {
+                pc.newPage(new byte[PageCache.PAGE_SIZE]);
+            }
+            Page pg = pc.lockPage(1);
+            pg.setDirty(true);
+            pg.unlock();
+            for (int i = 2; i <= 11; i++) {
+                pc.getPage(i);
+            }
+            pc.close();
+
+            // 第一个事务要预留事务id区间
+            TransactionManager tm = TransactionManager.create(trxPath);
+            long trxId = tm.begin();
+            tm.commit(trxId);
+
+            // 不关闭就重新打开，从日志恢复
+            DataManager dm = DataManager.create(dmPath, 64 * PageCache.PAGE_SIZE);
+            dm.insert(trxId, "recover".getBytes());
+            DataManager.open(dmPath, 64 * PageCache.PAGE_SIZE, tm).close();
+            tm.close();
+
+            slowLoad();
+
+            recording.stop();
+            recording.dump(dump);
+        }
+
+        List<RecordedEvent> events = RecordingFile.readAllEvents(dump);
+        Files.delete(dump);
+        new File(dbPath).delete();
+        new File(trxPath).delete();
+        clean(dmPath);
+
+        assertTrue(events.stream().anyMatch(e -> is(e, "PageRead") && e.getInt("bytes") == PageCache.PAGE_SIZE));
+        assertTrue(events.stream().anyMatch(e -> is(e, "PageFlush") && e.getInt("pageNumber") == 1));
+        assertTrue(events.stream().anyMatch(e -> is(e, "Fsync") && "page".equals(e.getString("file"))));
+        assertTrue(events.stream().anyMatch(e -> is(e, "Fsync") && "trxId".equals(e.getString("file"))));
+        assertTrue(events.stream().anyMatch(e -> is(e, "TransactionBegin") && e.getBoolean("reserved")));
+        assertTrue(events.stream().anyMatch(e -> is(e, "CounterLock") && e.getLong("trxIdLimit") > 0));
+        assertTrue(events.stream().anyMatch(e -> is(e, "Recovery") && e.getLong("redone") == 1));
+        RecordedEvent wait = events.stream().filter(e -> is(e, "CacheWait")).findFirst().orElseThrow();
+        assertEquals(SlowCache.class.getSimpleName(), wait.getString("cache"));
+        assertEquals(42, wait.getLong("key"));
+    }
+
+    private static void clean(String path) {
+        for (String suffix : new String[]{".db", ".log", ".db.hot"}) {
+            new File(path + suffix).delete();
+        }
+    }
+
+    private static boolean is(RecordedEvent e, String name) {
+        return e.getEventType().getName().equals("kkccdb." + name);
+    }
+
+    /**
+     * 两个线程同时加载同一个key，后到的线程要等前一个加载完
+     */
+    private static void slowLoad() throws Exception {
+        SlowCache cache = new SlowCache();
+        Thread loader = new Thread(() -> {
+            try {
+                cache.get(42);
+            } catch (Exception e) {
+                throw new RuntimeException(e);
+            }
+        });
+        loader.start();
+        cache.loading.await();
+        cache.get(42);
+        loader.join();
+    }
+
+    private static class SlowCache extends AbstractCacheLru<Long> {
+
+        final CountDownLatch loading = new CountDownLatch(1);
+
+        SlowCache() {
+            super(10);
+        }
+
+        @Override
+        protected Long getForCache(long key) throws Exception {
+            loading.countDown();
+            Thread.sleep(20);
+            return key;
+        }
+
+        @Override
+        protected void releaseForCache(Long obj) {
+        }
+    }
+}
@@ -0,0 +1,236 @@
+package kangc.kkccdb.backend.manager.data;
+
+import kangc.kkccdb.backend.common.RateLimiter;
+import kangc.kkccdb.backend.manager.data.pageCache.PageCache;
+import kangc.kkccdb.backend.manager.transaction.TransactionManager;
+import kangc.kkccdb.utils.Errors;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class BackupTest {
+
+    private static final long MEMORY = 64 * 8192;
+
+    /**
+     * 备份期间4个线程不停地插入并提交或回滚，打开副本后：
+     * 备份开始前提交的数据都在、回滚的都不在；副本的事务状态中已提交的事务，数据也都在，
+     * 回滚的和复制时还在执行的事务，数据都不在
+     */
+    @Test
+    public void testOnlineBackup() throws Exception {
+        String path = "/tmp/backup_test";
+        String target = "/tmp/backup_test_copy";
+        clean(path);
+        clean(target);
+        TransactionManager tm = TransactionManager.create(path + ".trxId");
+        DataManager dm = DataManager.create(path, MEMORY);
+        Map<Long, byte[]> before = new HashMap<>();
+        List<Long> rolledBack = new ArrayList<>();
+        Random random = new Random(1);
+        for (int i = 0; i < 3000; i++) {
+            long xid = tm.begin();
+            byte[] value = value(random);
+            long uid = dm.insert(xid, value);
+            if (i % 5 == 0) {
+                tm.rollback(xid);
+                rolledBack.add(uid);
+            } else {
+                tm.commit(xid);
+                before.put(uid, value);
+            }
+        }
+
+        AtomicBoolean stop = new AtomicBoolean();
+        List<long[]> written = new ArrayList<>();
+        Map<Long, byte[]> values = new HashMap<>();
+        Thread[] writers = new Thread[4];
+        for (int i = 0; i < writers.length; i++) {
+            long seed = i;
+            writers[i] = new Thread(() -> {
+                Random r = new Random(seed);
+                while (!stop.get()) {
+                    long xid = tm.begin();
+                    byte[] value = value(r);
+                    long uid;
+                    try {
+                        uid = dm.insert(xid, value);
+                    } catch (Exception e) {
+                        throw new RuntimeException(e);
+                    }
+                    if (r.nextInt(4) == 0) {
+                        tm.rollback(xid);
+                    } else {
+                        tm.commit(xid);
+                    }
+                    synchronized (written) {
+                        written.add(new long[]{xid, uid});
+                        values.put(uid, value);
+                    }
+                }
+            });
+            writers[i].start();
+        }
+        long start = System.nanoTime();
+        dm.backup(target, tm, target + ".trxId", 4 << 20);
+        double seconds = (System.nanoTime() - start) / 1e9;
+        stop.set(true);
+        for (Thread t : writers) {
+            t.join();
+        }
+        long bytes = new File(target + ".db").length() + new File(target + ".log").length()
+                + new File(target + ".trxId").length();
+        assertTrue(seconds * (4 << 20) >= bytes * 0.8);
+        dm.close();
+        tm.close();
+
+        TransactionManager tmCopy = TransactionManager.open(target + ".trxId");
+        DataManager dmCopy = DataManager.open(target, MEMORY, tmCopy);
+        for (Map.Entry<Long, byte[]> e : before.entrySet()) {
+            assertArrayEquals(e.getValue(), dmCopy.read(e.getKey()).data());
+        }
+        for (long uid : rolledBack) {
+            assertNull(dmCopy.read(uid));
+        }
+        for (long[] w : written) {
+            if (tmCopy.isCommitted(w[0])) {
+                assertArrayEquals(values.get(w[1]), dmCopy.read(w[1]).data());
+            } else {
+                assertGone(dmCopy, w[1]);
+            }
+        }
+        // 副本可以继续写入
+        long xid = tmCopy.begin();
+        long uid = dmCopy.insert(xid, "after".getBytes());
+        tmCopy.commit(xid);
+        assertArrayEquals("after".getBytes(), dmCopy.read(uid).data());
+        dmCopy.close();
+        tmCopy.close();
+        clean(path);
+        clean(target);
+    }
+
+    /**
+     * 备份到流：复制的字节和文件相同，限速生效
+     */
+    @Test
+    public void testBackupToStream() throws Exception {
+        String path = "/tmp/backup_stream_test.db";
+        new File(path).delete();
+        PageCache pc = PageCache.create(path, MEMORY);
+        byte[] data = new byte[PageCache.PAGE_SIZE];
+        for (int i = 0; i < 256; i++) {
+            Arrays.fill(data, (byte) i);
+            pc.newPage(data);
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        long start = System.nanoTime();
+        long copied = pc.backup(Channels.newChannel(out), new RateLimiter(8 << 20));
+        double seconds = (System.nanoTime() - start) / 1e9;
+        assertEquals(256L * PageCache.PAGE_SIZE, copied);
+        assertArrayEquals(Files.readAllBytes(Paths.get(path)), out.toByteArray());
+        // 2MB按8MB/s复制，第一块不等待，至少要等剩下的1.5MB
+        assertTrue(seconds >= 0.15);
+        pc.close();
+        new File(path).delete();
+        new File(path + PageCache.HOT_SUFFIX).delete();
+    }
+
+    /**
+     * 备份期间前台随机读页面的吞吐，文件是缓存的16倍：不限速的备份和前台争抢I/O，限速后影响变小
+     */
+    @Test
+    public void testForegroundDuringBackup() throws Exception {
+        String path = "/tmp/backup_foreground_test.db";
+        int pages = 1024;
+        new File(path).delete();
+        PageCache pc = PageCache.create(path, MEMORY);
+        byte[] data = new byte[PageCache.PAGE_SIZE];
+        for (int i = 0; i < pages; i++) {
+            pc.appendPage(data);
+        }
+        pc.force();
+        Random warmup = new Random(2);
+        for (int i = 0; i < 50000; i++) {
+            pc.getPage(1 + warmup.nextInt(pages));
+        }
+        // -1表示不备份
+        for (long limit : new long[]{-1, 0, 16 << 20}) {
+            AtomicBoolean stop = new AtomicBoolean();
+            // 复制的字节数、备份线程结束的时间
+            long[] backedUp = new long[2];
+            Thread backup = new Thread(() -> {
+                RateLimiter limiter = new RateLimiter(limit);
+                try {
+                    while (!stop.get()) {
+                        backedUp[0] += pc.backup(Channels.newChannel(OutputStream.nullOutputStream()), limiter);
+                    }
+                } catch (Exception e) {
+                    throw new RuntimeException(e);
+                }
+                backedUp[1] = System.nanoTime();
+            });
+            if (limit >= 0) {
+                backup.start();
+            }
+            Random random = new Random(1);
+            int reads = 50000;
+            long start = System.nanoTime();
+            for (int i = 0; i < reads; i++) {
+                pc.getPage(1 + random.nextInt(pages));
+            }
+            double seconds = (System.nanoTime() - start) / 1e9;
+            stop.set(true);
+            if (limit >= 0) {
+                backup.join();
+            }
+            System.out.printf("foreground reads during backup (%s): %.0f reads/s, backup %.0f MB/s%n",
+                    limit < 0 ? "no backup" : limit == 0 ? "unlimited" : (limit >> 20) + " MB/s",
+                    reads / seconds, limit < 0 ? 0 : backedUp[0] / ((backedUp[1] - start) / 1e9) / (1 << 20));
+        }
+        pc.close();
+        new File(path).delete();
+        new File(path + PageCache.HOT_SUFFIX).delete();
+    }
+
+    /**
+     * 数据项在副本中被撤销，或者插入得太晚，根本没有复制到副本中
+     */
+    private static void assertGone(DataManager dm, long uid) throws Exception {
+        try {
+            assertNull(dm.read(uid));
+        } catch (RuntimeException e) {
+            assertSame(Errors.InvalidUidException, e);
+        }
+    }
+
+    private static byte[] value(Random random) {
+        byte[] value = new byte[50 + random.nextInt(200)];
+        random.nextBytes(value);
+        return value;
+    }
+
+    private static void clean(String path) {
+        for (String suffix : new String[]{".db", ".log", ".trxId", ".db.hot"}) {
+            new File(path + suffix).delete();
+        }
+    }
+}
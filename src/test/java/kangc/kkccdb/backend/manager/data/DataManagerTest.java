@@ -0,0 +1,157 @@
+package kangc.kkccdb.backend.manager.data;
+
+import kangc.kkccdb.backend.manager.data.dataItem.DataItem;
+import kangc.kkccdb.backend.manager.transaction.TransactionManager;
+import org.junit.Test;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class DataManagerTest {
+
+    private static final long MEMORY = 64 * 8192;
+
+    @Test
+    public void testInsertReadUpdate() throws Exception {
+        String path = "/tmp/dm_basic_test";
+        clean(path);
+        TransactionManager tm = TransactionManager.create(path + ".trxId");
+        DataManager dm = DataManager.create(path, MEMORY);
+
+        long xid = tm.begin();
+        long small = dm.insert(xid, "hello".getBytes());
+        long large = dm.insert(xid, new byte[5000]);
+        dm.update(xid, small, "world".getBytes());
+        tm.commit(xid);
+        assertArrayEquals("world".getBytes(), dm.read(small).data());
+        assertEquals(5000, dm.read(large).data().length);
+        // 两个数据项放不进同一页
+        assert DataItem.pgno(small) != DataItem.pgno(large) || DataItem.slot(small) != DataItem.slot(large);
+
+        dm.close();
+        dm = DataManager.open(path, MEMORY, tm);
+        assertArrayEquals("world".getBytes(), dm.read(small).data());
+        dm.close();
+        tm.close();
+        clean(path);
+    }
+
+    /**
+     * 不关闭直接重新打开，模拟崩溃：已提交的插入和更新靠重做恢复，崩溃时未提交事务的插入和更新被撤销
+     */
+    @Test
+    public void testRecover() throws Exception {
+        String path = "/tmp/dm_recover_test";
+        clean(path);
+        TransactionManager tm = TransactionManager.create(path + ".trxId");
+        DataManager dm = DataManager.create(path, MEMORY);
+
+        long xid = tm.begin();
+        long uid = dm.insert(xid, "before".getBytes());
+        dm.update(xid, uid, "after!".getBytes());
+        tm.commit(xid);
+        long active = tm.begin();
+        long undone = dm.insert(active, "undone".getBytes());
+        dm.update(active, uid, "CHANGE".getBytes());
+        // 崩溃：dm不关闭，页面都还在缓存里没有写回；tm不提交也不回滚active
+        tm.close();
+
+        // 重新打开两个管理器，崩溃时还在执行的事务在事务ID文件中是aborted
+        TransactionManager reopened = TransactionManager.open(path + ".trxId");
+        assert reopened.isAborted(active) && !reopened.isActive(active);
+        DataManager recovered = DataManager.open(path, MEMORY, reopened);
+        assertArrayEquals("after!".getBytes(), recovered.read(uid).data());
+        assertNull(recovered.read(undone));
+        recovered.close();
+        reopened.close();
+        clean(path);
+    }
+
+    /**
+     * 事务ID文件比日志旧（在线备份先复制事务ID文件），日志中有超出预留区间的事务：
+     * 恢复后这些id按aborted处理，新事务的id大于日志中所有的id
+     */
+    @Test
+    public void testRecoverSkipsLoggedTrxIds() throws Exception {
+        String path = "/tmp/dm_recover_skip_test";
+        clean(path);
+        TransactionManager tm = TransactionManager.create(path + ".trxId");
+        DataManager dm = DataManager.create(path, MEMORY);
+        long first = tm.begin();
+        dm.insert(first, "first".getBytes());
+        tm.commit(first);
+        byte[] oldTrxIds = Files.readAllBytes(Paths.get(path + ".trxId"));
+        long last = 0;
+        for (int i = 0; i < 5000; i++) {
+            last = tm.begin();
+            dm.insert(last, "later".getBytes());
+            tm.commit(last);
+        }
+        tm.close();
+        Files.write(Paths.get(path + ".trxId"), oldTrxIds);
+
+        TransactionManager restored = TransactionManager.open(path + ".trxId");
+        DataManager recovered = DataManager.open(path, MEMORY, restored);
+        assert restored.isCommitted(first);
+        assert restored.isAborted(last) && !restored.isCommitted(last);
+        long xid = restored.begin();
+        assert xid > last;
+        restored.commit(xid);
+        assert !restored.isCommitted(last);
+        recovered.close();
+        restored.close();
+        clean(path);
+    }
+
+    @Test
+    public void testMultiThreadInsert() throws Exception {
+        String path = "/tmp/dm_multi_test";
+        clean(path);
+        TransactionManager tm = TransactionManager.create(path + ".trxId");
+        DataManager dm = DataManager.create(path, MEMORY);
+        Map<Long, byte[]> inserted = new ConcurrentHashMap<>();
+        int threads = 8, perThread = 200;
+        CountDownLatch latch = new CountDownLatch(threads);
+        for (int i = 0; i < threads; i++) {
+            new Thread(() -> {
+                Random random = new Random();
+                try {
+                    long xid = tm.begin();
+                    for (int j = 0; j < perThread; j++) {
+                        byte[] data = new byte[random.nextInt(300) + 1];
+                        random.nextBytes(data);
+                        inserted.put(dm.insert(xid, data), data);
+                    }
+                    tm.commit(xid);
+                } catch (Exception e) {
+                    e.printStackTrace();
+                }
+                latch.countDown();
+            }).start();
+        }
+        latch.await();
+        assertEquals(threads * perThread, inserted.size());
+        for (Map.Entry<Long, byte[]> e : inserted.entrySet()) {
+            assert Arrays.equals(e.getValue(), dm.read(e.getKey()).data());
+        }
+        dm.close();
+        tm.close();
+        clean(path);
+    }
+
+    private void clean(String path) {
+        new File(path + ".trxId").delete();
+        new File(path + ".db").delete();
+        new File(path + ".log").delete();
+    }
+}
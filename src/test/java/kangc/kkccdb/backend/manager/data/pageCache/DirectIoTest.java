@@ -0,0 +1,54 @@
+package kangc.kkccdb.backend.manager.data.pageCache;
+
+import kangc.kkccdb.backend.common.Parser;
+import kangc.kkccdb.backend.manager.data.page.Page;
+import org.junit.Assume;
+import org.junit.Test;
+
+import java.io.File;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class DirectIoTest {
+
+    @Test
+    public void testDirectIo() throws Exception {
+        String path = "/tmp/direct_io_test.db";
+        new File(path).delete();
+        PageCacheImpl pc = PageCache.create(path, 16 * PageCache.PAGE_SIZE, true);
+        Assume.assumeTrue("文件系统不支持O_DIRECT", pc.isDirect());
+        for (int i = 1; i <= 100; i++) {
+            pc.newPage(page(i));
+        }
+        // 缓存只有16页，修改后被淘汰的页面通过直接I/O写回
+        for (int i = 1; i <= 100; i++) {
+            Page pg = pc.lockPage(i);
+            System.arraycopy(Parser.int2Byte(-i), 0, pg.getData(), 0, 4);
+            pg.setDirty(true);
+            pg.unlock();
+        }
+        for (int i = 1; i <= 100; i++) {
+            assertEquals(-i, Parser.parseInt(pc.getPage(i).getData()));
+        }
+        pc.close();
+
+        // 普通模式读到直接I/O写入的数据
+        pc = PageCache.open(path, 16 * PageCache.PAGE_SIZE);
+        for (int i = 100; i >= 1; i--) {
+            assertEquals(-i, Parser.parseInt(pc.getPage(i).getData()));
+        }
+        pc.close();
+        new File(path).delete();
+        new File(path + PageCache.HOT_SUFFIX).delete();
+
+        // 打不开时返回null，退回到普通读写
+        assertNull(DirectIo.open(new File("/nonexistent/direct_io_test.db")));
+    }
+
+    private static byte[] page(int pgno) {
+        byte[] data = new byte[PageCache.PAGE_SIZE];
+        System.arraycopy(Parser.int2Byte(pgno), 0, data, 0, 4);
+        return data;
+    }
+}
@@ -0,0 +1,87 @@
+package kangc.kkccdb.backend.manager.data.pageCache;
+
+import kangc.kkccdb.backend.common.Parser;
+import kangc.kkccdb.backend.manager.data.page.Page;
+import org.junit.Test;
+
+import java.io.File;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class HotPagesTest {
+
+    private static final int PAGES = 500;
+    private static final int CACHE_PAGES = 50;
+
+    @Test
+    public void testPrewarm() throws Exception {
+        String path = "/tmp/hot_pages_test.db";
+        new File(path).delete();
+        PageCacheImpl pc = PageCache.create(path, CACHE_PAGES * PageCache.PAGE_SIZE);
+        for (int i = 1; i <= PAGES; i++) {
+            pc.appendPage(page(i));
+        }
+        pc.force();
+
+        // 热点是[300, 340)，最后访问的是[100, 110)
+        for (int round = 0; round < 3; round++) {
+            for (int i = 300; i < 340; i++) {
+                pc.getPage(i);
+            }
+        }
+        for (int i = 100; i < 110; i++) {
+            pc.getPage(i);
+        }
+        pc.saveHotPages();
+        int[] hot = pc.loadHotPages();
+        assertEquals(CACHE_PAGES, hot.length);
+        assertEquals(100, hot[0]);
+        assertEquals(339, hot[hot.length - 1]);
+        pc.close();
+        assertTrue(new File(path + PageCache.HOT_SUFFIX).exists());
+
+        // 不预热时缓存是空的
+        pc = PageCache.open(path, CACHE_PAGES * PageCache.PAGE_SIZE);
+        assertFalse(pc.isCached(300));
+        pc.close();
+
+        // 列表比缓存大时只预热最近访问的页面；预热只填充空闲的容量，不淘汰已经在缓存中的页面
+        pc = PageCache.open(path, 20 * PageCache.PAGE_SIZE);
+        Page first = pc.getPage(1);
+        pc.prewarm();
+        pc.awaitPrewarm();
+        for (int i = 100; i < 110; i++) {
+            assertTrue(pc.isCached(i));
+        }
+        assertTrue(pc.isCached(1));
+        assertTrue(first == pc.getPage(1));
+        pc.close();
+
+        pc = PageCache.open(path, CACHE_PAGES * PageCache.PAGE_SIZE);
+        pc.prewarm();
+        // 前台读和预热同时进行，读到的都是文件中的数据
+        for (int i = PAGES; i >= 1; i -= 7) {
+            assertEquals(i, Parser.parseInt(pc.getPage(i).getData()));
+        }
+        pc.awaitPrewarm();
+        pc.close();
+
+        // 重新创建同名文件，旧的列表被删除
+        new File(path).delete();
+        pc = PageCache.create(path, CACHE_PAGES * PageCache.PAGE_SIZE);
+        assertFalse(new File(path + PageCache.HOT_SUFFIX).exists());
+        assertArrayEquals(new int[0], pc.loadHotPages());
+        pc.close();
+        new File(path).delete();
+        new File(path + PageCache.HOT_SUFFIX).delete();
+    }
+
+    private static byte[] page(int pgno) {
+        byte[] data = new byte[PageCache.PAGE_SIZE];
+        System.arraycopy(Parser.int2Byte(pgno), 0, data, 0, 4);
+        return data;
+    }
+}
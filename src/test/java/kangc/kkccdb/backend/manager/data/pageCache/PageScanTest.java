@@ -0,0 +1,151 @@
+package kangc.kkccdb.backend.manager.data.pageCache;
+
+import kangc.kkccdb.backend.common.Parser;
+import kangc.kkccdb.backend.manager.data.page.Page;
+import org.junit.Test;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.StreamSupport;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+public class PageScanTest {
+
+    private static final int PAGES = 4000;
+
+    @Test
+    public void testScan() throws Exception {
+        String path = "/tmp/page_scan_test.db";
+        new File(path).delete();
+        PageCache pc = PageCache.create(path, 32 * PageCache.PAGE_SIZE);
+        for (int i = 1; i <= PAGES; i++) {
+            pc.appendPage(page(i));
+        }
+        pc.force();
+
+        // 缓存中的脏页还没写回，扫描要读到修改后的数据
+        Page hot = pc.lockPage(7);
+        System.arraycopy(Parser.int2Byte(-7), 0, hot.getData(), 0, 4);
+        hot.setDirty(true);
+        hot.unlock();
+
+        long expected = (long) PAGES * (PAGES + 1) / 2 - 14;
+        AtomicLong sum = new AtomicLong();
+        ForkJoinPool pool = new ForkJoinPool(4);
+        pc.parallelScan(pool, 64, pg -> {
+            int v = Parser.parseInt(pg.getData());
+            assert Math.abs(v) == pg.getPageNumber();
+            sum.addAndGet(v);
+        });
+        assertEquals(expected, sum.get());
+
+        long streamSum = StreamSupport.stream(pc.scan(64), true)
+                .mapToLong(pg -> Parser.parseInt(pg.getData())).sum();
+        assertEquals(expected, streamSum);
+        int[] order = {0};
+        pc.scan(100).forEachRemaining(pg -> assertEquals(++order[0], pg.getPageNumber()));
+        assertEquals(PAGES, order[0]);
+
+        // 扫描没有把热点页面淘汰出缓存
+        assertSame(hot, pc.getPage(7));
+        pool.shutdown();
+        pc.close();
+        new File(path).delete();
+    }
+
+    /**
+     * 扫描期间另一个线程不停地整页改写并淘汰页面，扫描读到的每一页都是完整的一个版本
+     */
+    @Test
+    public void testScanDuringWrites() throws Exception {
+        String path = "/tmp/page_scan_writes_test.db";
+        new File(path).delete();
+        PageCache pc = PageCache.create(path, 16 * PageCache.PAGE_SIZE);
+        int pages = 256;
+        byte[] data = new byte[PageCache.PAGE_SIZE];
+        for (int i = 1; i <= pages; i++) {
+            pc.appendPage(data);
+        }
+        pc.force();
+        AtomicBoolean stop = new AtomicBoolean();
+        Thread writer = new Thread(() -> {
+            Random random = new Random(1);
+            try {
+                while (!stop.get()) {
+                    Page pg = pc.lockPage(1 + random.nextInt(pages));
+                    Arrays.fill(pg.getData(), (byte) random.nextInt());
+                    pg.setDirty(true);
+                    pg.unlock();
+                    pc.release(pg);
+                }
+            } catch (Exception e) {
+                throw new RuntimeException(e);
+            }
+        });
+        writer.start();
+        ForkJoinPool pool = new ForkJoinPool(2);
+        for (int round = 0; round < 20; round++) {
+            pc.parallelScan(pool, 32, pg -> {
+                byte[] d = pg.getData();
+                for (byte b : d) {
+                    assert b == d[0] : "page " + pg.getPageNumber() + " is torn";
+                }
+            });
+        }
+        stop.set(true);
+        writer.join();
+        pool.shutdown();
+        pc.close();
+        new File(path).delete();
+        new File(path + PageCache.HOT_SUFFIX).delete();
+    }
+
+    /**
+     * 对比逐页getPage和并行分块扫描
+     */
+    @Test
+    public void testScanThroughput() throws Exception {
+        String path = "/tmp/page_scan_throughput_test.db";
+        new File(path).delete();
+        PageCache pc = PageCache.create(path, 256 * PageCache.PAGE_SIZE);
+        int pages = 20000;
+        for (int i = 1; i <= pages; i++) {
+            pc.appendPage(page(i));
+        }
+        pc.force();
+
+        ForkJoinPool pool = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+        for (int round = 0; round < 3; round++) {
+            long start = System.nanoTime();
+            long sum = 0;
+            for (int i = 1; i <= pages; i++) {
+                sum += Parser.parseInt(pc.getPage(i).getData());
+            }
+            long getPageNanos = System.nanoTime() - start;
+
+            AtomicLong scanSum = new AtomicLong();
+            start = System.nanoTime();
+            pc.parallelScan(pool, 128, pg -> scanSum.addAndGet(Parser.parseInt(pg.getData())));
+            long scanNanos = System.nanoTime() - start;
+            assertEquals(sum, scanSum.get());
+
+            System.out.printf("扫描 %d 页: 逐页getPage %d ms, 并行分块扫描 %d ms%n", pages,
+                    getPageNanos / 1000000, scanNanos / 1000000);
+        }
+        pool.shutdown();
+        pc.close();
+        new File(path).delete();
+    }
+
+    private static byte[] page(int pgno) {
+        byte[] data = new byte[PageCache.PAGE_SIZE];
+        System.arraycopy(Parser.int2Byte(pgno), 0, data, 0, 4);
+        return data;
+    }
+}
@@ -0,0 +1,153 @@
+package kangc.kkccdb.backend.manager.index;
+
+import kangc.kkccdb.backend.manager.data.pageCache.PageCache;
+import org.junit.Test;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+
+import static org.junit.Assert.assertEquals;
+
+public class BPlusTreeTest {
+
+    @Test
+    public void testInsertSearch() throws Exception {
+        String path = "/tmp/bplus_basic_test.db";
+        new File(path).delete();
+        PageCache pc = PageCache.create(path, 64 * PageCache.PAGE_SIZE);
+        int meta = BPlusTree.create(pc);
+        BPlusTree tree = BPlusTree.load(pc, meta);
+
+        int n = 20000;
+        List<Long> keys = new ArrayList<>();
+        for (long i = 0; i < n; i++) {
+            keys.add(i * 2);
+        }
+        Collections.shuffle(keys, new Random(1));
+        for (long key : keys) {
+            tree.insert(key, key + 1);
+        }
+        // 覆盖已有的key
+        tree.insert(100, 7);
+
+        for (long i = 0; i < n; i++) {
+            long expected = i * 2 == 100 ? 7 : i * 2 + 1;
+            assertEquals(expected, tree.search(i * 2));
+            assertEquals(BPlusTree.NOT_FOUND, tree.search(i * 2 + 1));
+        }
+        List<Long> range = tree.searchRange(1001, 3000);
+        assertEquals(1000, range.size());
+        assertEquals(1003L, (long) range.get(0));
+        assertEquals(3001L, (long) range.get(999));
+
+        // 关闭后重新加载
+        pc.close();
+        pc = PageCache.open(path, 64 * PageCache.PAGE_SIZE);
+        tree = BPlusTree.load(pc, meta);
+        assertEquals(n, tree.searchRange(Long.MIN_VALUE, Long.MAX_VALUE).size());
+        assertEquals(41L, tree.search(40));
+        pc.close();
+        new File(path).delete();
+    }
+
+    /**
+     * 多线程插入的同时做范围扫描，缓存很小，页面不断被淘汰
+     */
+    @Test
+    public void testConcurrentInsert() throws Exception {
+        String path = "/tmp/bplus_concurrent_test.db";
+        new File(path).delete();
+        PageCache pc = PageCache.create(path, 16 * PageCache.PAGE_SIZE);
+        BPlusTree tree = BPlusTree.load(pc, BPlusTree.create(pc));
+
+        int threads = 8, perThread = 10000;
+        CountDownLatch done = new CountDownLatch(threads);
+        for (int t = 0; t < threads; t++) {
+            int id = t;
+            new Thread(() -> {
+                Random random = new Random(id);
+                for (int i = 0; i < perThread; i++) {
+                    long key = (long) i * threads + id;
+                    tree.insert(key, key);
+                    if (random.nextInt(100) == 0) {
+                        List<Long> range = tree.searchRange(key - 500, key);
+                        for (int j = 1; j < range.size(); j++) {
+                            assert range.get(j - 1) < range.get(j);
+                        }
+                    }
+                }
+                done.countDown();
+            }).start();
+        }
+        done.await();
+
+        List<Long> all = tree.searchRange(Long.MIN_VALUE, Long.MAX_VALUE);
+        assertEquals(threads * perThread, all.size());
+        for (int i = 0; i < all.size(); i++) {
+            assertEquals(i, (long) all.get(i));
+        }
+        for (long key = 0; key < threads * perThread; key++) {
+            assertEquals(key, tree.search(key));
+        }
+        pc.close();
+        new File(path).delete();
+    }
+
+    /**
+     * 不同线程数下插入和点查询的吞吐量
+     */
+    @Test
+    public void testThroughput() throws Exception {
+        int total = 200000;
+        for (int threads : new int[]{1, 2, 4, 8}) {
+            String path = "/tmp/bplus_throughput_test.db";
+            new File(path).delete();
+            PageCache pc = PageCache.create(path, 2048L * PageCache.PAGE_SIZE);
+            BPlusTree tree = BPlusTree.load(pc, BPlusTree.create(pc));
+
+            int perThread = total / threads;
+            long start = System.nanoTime();
+            run(threads, id -> {
+                Random random = new Random(id);
+                for (int i = 0; i < perThread; i++) {
+                    tree.insert(random.nextLong(), i);
+                }
+            });
+            long insertNanos = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            run(threads, id -> {
+                Random random = new Random(id);
+                for (int i = 0; i < perThread; i++) {
+                    assert tree.search(random.nextLong()) == i;
+                }
+            });
+            long searchNanos = System.nanoTime() - start;
+
+            System.out.printf("B+树 %d 线程: 插入 %.0f 次/秒, 点查询 %.0f 次/秒%n", threads,
+                    total * 1e9 / insertNanos, total * 1e9 / searchNanos);
+            pc.close();
+            new File(path).delete();
+        }
+    }
+
+    private interface Worker {
+        void run(int id);
+    }
+
+    private static void run(int threads, Worker worker) throws InterruptedException {
+        CountDownLatch done = new CountDownLatch(threads);
+        for (int t = 0; t < threads; t++) {
+            int id = t;
+            new Thread(() -> {
+                worker.run(id);
+                done.countDown();
+            }).start();
+        }
+        done.await();
+    }
+}
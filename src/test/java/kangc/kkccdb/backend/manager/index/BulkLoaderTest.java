@@ -0,0 +1,112 @@
+package kangc.kkccdb.backend.manager.index;
+
+import kangc.kkccdb.backend.manager.data.pageCache.PageCache;
+import kangc.kkccdb.utils.Errors;
+import org.junit.Test;
+
+import java.io.File;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+public class BulkLoaderTest {
+
+    private static final long MEMORY = 256L * PageCache.PAGE_SIZE;
+
+    @Test
+    public void testBulkLoad() throws Exception {
+        String path = "/tmp/bulk_load_test.db";
+        new File(path).delete();
+        PageCache pc = PageCache.create(path, MEMORY);
+
+        int n = 100000;
+        BulkLoader loader = new BulkLoader(pc, 0.7);
+        for (long i = 0; i < n; i++) {
+            loader.add(i * 3, i);
+        }
+        int meta = loader.finish();
+        try {
+            loader.add(0, 0);
+            fail();
+        } catch (RuntimeException e) {
+            assertSame(Errors.UnsortedKeyException, e);
+        }
+
+        BPlusTree tree = BPlusTree.load(pc, meta);
+        for (long i = 0; i < n; i++) {
+            assertEquals(i, tree.search(i * 3));
+            assertEquals(BPlusTree.NOT_FOUND, tree.search(i * 3 + 1));
+        }
+        List<Long> all = tree.searchRange(Long.MIN_VALUE, Long.MAX_VALUE);
+        assertEquals(n, all.size());
+        for (int i = 0; i < n; i++) {
+            assertEquals(i, (long) all.get(i));
+        }
+
+        // 加载后的树可以继续插入
+        for (long i = 0; i < n; i++) {
+            tree.insert(i * 3 + 1, -i);
+        }
+        assertEquals(2 * n, tree.searchRange(Long.MIN_VALUE, Long.MAX_VALUE).size());
+        assertEquals(-5L, tree.search(16));
+        pc.close();
+
+        pc = PageCache.open(path, MEMORY);
+        tree = BPlusTree.load(pc, meta);
+        assertEquals(2 * n, tree.searchRange(Long.MIN_VALUE, Long.MAX_VALUE).size());
+        pc.close();
+        new File(path).delete();
+    }
+
+    @Test
+    public void testEmpty() throws Exception {
+        String path = "/tmp/bulk_load_empty_test.db";
+        new File(path).delete();
+        PageCache pc = PageCache.create(path, MEMORY);
+        BPlusTree tree = BPlusTree.load(pc, new BulkLoader(pc, 1).finish());
+        assertEquals(BPlusTree.NOT_FOUND, tree.search(1));
+        tree.insert(1, 2);
+        assertEquals(2, tree.search(1));
+        pc.close();
+        new File(path).delete();
+    }
+
+    /**
+     * 同样的有序数据，对比批量加载和逐条插入的耗时和页数
+     */
+    @Test
+    public void testCompareWithInsert() throws Exception {
+        int n = 500000;
+        String path = "/tmp/bulk_load_compare_test.db";
+
+        new File(path).delete();
+        PageCache pc = PageCache.create(path, MEMORY);
+        long start = System.nanoTime();
+        BulkLoader loader = new BulkLoader(pc, 0.9);
+        for (long i = 0; i < n; i++) {
+            loader.add(i, i);
+        }
+        loader.finish();
+        long bulkNanos = System.nanoTime() - start;
+        int bulkPages = pc.getPageNumber();
+        pc.close();
+
+        new File(path).delete();
+        pc = PageCache.create(path, MEMORY);
+        start = System.nanoTime();
+        BPlusTree tree = BPlusTree.load(pc, BPlusTree.create(pc));
+        for (long i = 0; i < n; i++) {
+            tree.insert(i, i);
+        }
+        pc.close();
+        long insertNanos = System.nanoTime() - start;
+        int insertPages = pc.getPageNumber();
+        new File(path).delete();
+
+        System.out.printf("加载 %d 个有序key: 批量加载 %d ms, %d 页; 逐条插入 %d ms, %d 页%n", n,
+                bulkNanos / 1000000, bulkPages, insertNanos / 1000000, insertPages);
+        assert bulkPages < insertPages;
+    }
+}
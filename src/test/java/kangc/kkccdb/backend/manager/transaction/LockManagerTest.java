@@ -0,0 +1,172 @@
+package kangc.kkccdb.backend.manager.transaction;
+
+import kangc.kkccdb.utils.Errors;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class LockManagerTest {
+
+    @Test
+    public void testLockAndHandoff() throws Exception {
+        LockManager lm = new LockManager(4);
+        lm.lock(1, 100);
+        lm.lock(1, 100);
+        assertTrue(lm.isHeldBy(1, 100));
+
+        // 2和3先后等待100，释放时按先来后到交接
+        List<Long> order = new ArrayList<>();
+        Thread t2 = waiter(lm, 2, 100, order, true);
+        waitUntilParked(t2);
+        Thread t3 = waiter(lm, 3, 100, order, true);
+        waitUntilParked(t3);
+        lm.releaseAll(1);
+        t2.join();
+        t3.join();
+        assertEquals(List.of(2L, 3L), order);
+        assertFalse(lm.isHeldBy(1, 100));
+        assertFalse(lm.isHeldBy(3, 100));
+        lm.lock(4, 100);
+        assertTrue(lm.isHeldBy(4, 100));
+        lm.releaseAll(4);
+    }
+
+    @Test
+    public void testDeadlock() throws Exception {
+        LockManager lm = new LockManager(1);
+        // 1 -> 2 -> 3 -> 1，最后等待的3闭合环，被选为牺牲者
+        lm.lock(1, 10);
+        lm.lock(2, 20);
+        lm.lock(3, 30);
+        List<Long> order = new ArrayList<>();
+        Thread t1 = waiter(lm, 1, 20, order, false);
+        waitUntilParked(t1);
+        Thread t2 = waiter(lm, 2, 30, order, false);
+        waitUntilParked(t2);
+        try {
+            lm.lock(3, 10);
+            fail();
+        } catch (RuntimeException e) {
+            assertSame(Errors.DeadlockException, e);
+        }
+        // 牺牲者没拿到10，仍持有30
+        assertTrue(lm.isHeldBy(1, 10));
+        assertTrue(lm.isHeldBy(3, 30));
+        lm.releaseAll(3);
+        t2.join();
+        assertTrue(lm.isHeldBy(2, 30));
+        lm.releaseAll(2);
+        t1.join();
+        assertTrue(lm.isHeldBy(1, 20));
+        lm.releaseAll(1);
+        assertEquals(List.of(2L, 1L), order);
+    }
+
+    /**
+     * 等待中被中断：继续park而不是空转，拿到锁后中断标志仍在
+     */
+    @Test
+    public void testInterruptWhileWaiting() throws Exception {
+        LockManager lm = new LockManager(4);
+        lm.lock(1, 100);
+        boolean[] interrupted = new boolean[1];
+        Thread t = new Thread(() -> {
+            lm.lock(2, 100);
+            interrupted[0] = Thread.currentThread().isInterrupted();
+            lm.releaseAll(2);
+        });
+        t.start();
+        waitUntilParked(t);
+        t.interrupt();
+        Thread.sleep(20);
+        assertEquals(Thread.State.WAITING, t.getState());
+        assertFalse(lm.isHeldBy(2, 100));
+        lm.releaseAll(1);
+        t.join();
+        assertTrue(interrupted[0]);
+    }
+
+    /**
+     * 32个线程在少量数据项上按随机顺序加锁，死锁时回滚重试：
+     * 每个数据项上的计数器在锁内非原子地自增，最后的值说明没有两个事务同时持有同一把锁
+     */
+    @Test
+    public void testStress() throws Exception {
+        LockManager lm = new LockManager(8);
+        int items = 16, threads = 32, perThread = 300;
+        long[] counters = new long[items];
+        AtomicLong nextTrxId = new AtomicLong(1);
+        AtomicInteger deadlocks = new AtomicInteger();
+        Thread[] workers = new Thread[threads];
+        for (int i = 0; i < threads; i++) {
+            long seed = i;
+            workers[i] = new Thread(() -> {
+                SplittableRandom random = new SplittableRandom(seed);
+                for (int j = 0; j < perThread; j++) {
+                    int[] picked = {random.nextInt(items), random.nextInt(items), random.nextInt(items)};
+                    while (true) {
+                        long trxId = nextTrxId.getAndIncrement();
+                        try {
+                            for (int k : picked) {
+                                lm.lock(trxId, k + 1);
+                            }
+                        } catch (RuntimeException e) {
+                            assertSame(Errors.DeadlockException, e);
+                            deadlocks.incrementAndGet();
+                            lm.releaseAll(trxId);
+                            continue;
+                        }
+                        for (int k : picked) {
+                            counters[k]++;
+                        }
+                        lm.releaseAll(trxId);
+                        break;
+                    }
+                }
+            });
+            workers[i].start();
+        }
+        for (Thread t : workers) {
+            t.join();
+        }
+        long total = 0;
+        for (long c : counters) {
+            total += c;
+        }
+        assertEquals(3L * threads * perThread, total);
+        System.out.printf("lock stress: %d transactions, %d deadlocks%n", threads * perThread, deadlocks.get());
+    }
+
+    /**
+     * 在新线程中加锁，拿到后记录顺序，release为true时随即释放
+     */
+    private static Thread waiter(LockManager lm, long trxId, long uid, List<Long> order, boolean release) {
+        Thread t = new Thread(() -> {
+            lm.lock(trxId, uid);
+            synchronized (order) {
+                order.add(trxId);
+            }
+            if (release) {
+                lm.releaseAll(trxId);
+            }
+        });
+        t.start();
+        return t;
+    }
+
+    private static void waitUntilParked(Thread t) throws InterruptedException {
+        while (t.getState() != Thread.State.WAITING) {
+            Thread.sleep(1);
+        }
+    }
+}
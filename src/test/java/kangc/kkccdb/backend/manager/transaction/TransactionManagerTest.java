@@ -1,12 +1,20 @@
 package kangc.kkccdb.backend.manager.transaction;
 
 import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.LongAdder;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantLock;
 
+import kangc.kkccdb.backend.common.RateLimiter;
+import kangc.kkccdb.utils.Errors;
 import org.junit.Test;
 
 public class TransactionManagerTest {
@@ -36,6 +44,399 @@ public class TransactionManagerTest {
         assert new File("/tmp/tranmger_test.trxId").delete();
     }
 
+    @Test
+    public void testReopenAbortsReservedTrxIds() {
+        String path = "/tmp/tranmger_reopen_test.trxId";
+        new File(path).delete();
+        TransactionManager tm = TransactionManager.create(path);
+        long committed = tm.begin();
+        long aborted = tm.begin();
+        long active = tm.begin();
+        tm.commit(committed);
+        tm.rollback(aborted);
+        assert tm.isActive(active);
+        tm.close();
+
+        // 重启后，崩溃时仍活跃的事务、预留未使用的事务都视为aborted
+        tm = TransactionManager.open(path);
+        assert tm.isCommitted(committed);
+        assert tm.isAborted(aborted);
+        assert tm.isAborted(active);
+        assert tm.isAborted(active + 1);
+        long next = tm.begin();
+        assert next > active + 1;
+        assert tm.isActive(next);
+        tm.commit(next);
+        assert tm.isCommitted(next);
+        tm.close();
+        assert new File(path).delete();
+    }
+
+    /**
+     * 64个线程并发提交/回滚，组提交后重新打开，状态都应已持久化
+     */
+    @Test
+    public void testGroupCommit() throws InterruptedException {
+        String path = "/tmp/tranmger_group_commit_test.trxId";
+        new File(path).delete();
+        TransactionManager tm = TransactionManager.create(path);
+        int threads = 64, perThread = 50;
+        long[][] trxIds = new long[threads][perThread];
+        Thread[] workers = new Thread[threads];
+        long start = System.nanoTime();
+        for (int i = 0; i < threads; i++) {
+            long[] mine = trxIds[i];
+            workers[i] = new Thread(() -> {
+                for (int j = 0; j < perThread; j++) {
+                    long xid = tm.begin();
+                    mine[j] = xid;
+                    if (xid % 3 == 0) {
+                        tm.rollback(xid);
+                    } else {
+                        tm.commit(xid);
+                    }
+                }
+            });
+            workers[i].start();
+        }
+        for (Thread t : workers) {
+            t.join();
+        }
+        System.out.printf("group commit: threads=%d, %.0f commits/s%n", threads,
+                threads * perThread / ((System.nanoTime() - start) / 1e9));
+        tm.close();
+
+        TransactionManager reopened = TransactionManager.open(path);
+        for (long[] mine : trxIds) {
+            for (long xid : mine) {
+                assert xid % 3 == 0 ? reopened.isAborted(xid) : reopened.isCommitted(xid);
+            }
+        }
+        reopened.close();
+        assert new File(path).delete();
+    }
+
+    /**
+     * 状态窗口很小时，事务数远超窗口大小，文件大小仍然有界，重新打开后冻结事务的状态不变
+     */
+    @Test
+    public void testFrozenHorizon() throws InterruptedException {
+        String path = "/tmp/tranmger_frozen_test.trxId";
+        new File(path).delete();
+        int window = 4096;
+        TransactionManager tm = TransactionManager.create(path, window);
+        int threads = 16, perThread = 1000;
+        long[][] trxIds = new long[threads][perThread];
+        Thread[] workers = new Thread[threads];
+        for (int i = 0; i < threads; i++) {
+            long[] mine = trxIds[i];
+            workers[i] = new Thread(() -> {
+                for (int j = 0; j < perThread; j++) {
+                    long xid = tm.begin();
+                    mine[j] = xid;
+                    if (xid % 7 == 0) {
+                        tm.rollback(xid);
+                    } else {
+                        tm.commit(xid);
+                    }
+                }
+            });
+            workers[i].start();
+        }
+        for (Thread t : workers) {
+            t.join();
+        }
+        assert tm.getFrozenTrxId() > 0;
+        tm.close();
+
+        TransactionManager reopened = TransactionManager.open(path);
+        long aborted = 0;
+        for (long[] mine : trxIds) {
+            for (long xid : mine) {
+                if (xid % 7 == 0) {
+                    assert reopened.isAborted(xid) && !reopened.isCommitted(xid);
+                    aborted++;
+                } else {
+                    assert reopened.isCommitted(xid) && !reopened.isAborted(xid);
+                }
+            }
+        }
+        // 状态窗口 + 冻结区间中aborted的事务id，不随事务总数增长
+        assert new File(path).length() <= 28 + window + 8 * (aborted + 4096);
+        reopened.close();
+        assert new File(path).delete();
+    }
+
+    /**
+     * 反复崩溃重启：每次预留未用的整段id在冻结后只占aborted列表中的一项，文件大小不随崩溃前预留的id数增长
+     */
+    @Test
+    public void testCrashRangesStayCompact() {
+        String path = "/tmp/tranmger_crash_ranges_test.trxId";
+        new File(path).delete();
+        int window = 8192, crashes = 40;
+        TransactionManager tm = TransactionManager.create(path, window);
+        List<Long> committed = new ArrayList<>();
+        for (int i = 0; i < crashes; i++) {
+            long xid = tm.begin();
+            tm.commit(xid);
+            committed.add(xid);
+            // 不正常关闭，预留区间中没用的4095个id都成为aborted
+            tm.close();
+            tm = TransactionManager.open(path);
+        }
+        long xid = tm.begin();
+        assert tm.getFrozenTrxId() > 0;
+        for (long c : committed) {
+            assert tm.isCommitted(c) && !tm.isAborted(c);
+            assert tm.isAborted(c + 1) && !tm.isCommitted(c + 1);
+        }
+        tm.commit(xid);
+        // 每次崩溃最多留下一两段，而不是每个id一项
+        assert new File(path).length() <= 28 + window + 8 * (2 * crashes + 2);
+        tm.close();
+        assert new File(path).delete();
+    }
+
+    /**
+     * 恢复时跳过的id远超状态窗口：跳过的id都是aborted，之后begin的id大于它们，重启后仍然如此
+     */
+    @Test
+    public void testSkipBeyondWindow() {
+        String path = "/tmp/tranmger_skip_test.trxId";
+        new File(path).delete();
+        int window = 8192;
+        TransactionManager tm = TransactionManager.create(path, window);
+        long committed = tm.begin();
+        tm.commit(committed);
+        long skipped = 20L * window + 7;
+        tm.skipTrxIds(skipped);
+        long next = tm.begin();
+        assert next > skipped;
+        tm.commit(next);
+        for (long xid : new long[]{committed + 1, 4097, 5L * window, 0x10000 + 1, skipped}) {
+            assert tm.isAborted(xid) && !tm.isCommitted(xid) : xid;
+        }
+        assert tm.isCommitted(committed) && tm.isCommitted(next);
+        tm.close();
+
+        tm = TransactionManager.open(path);
+        assert tm.isCommitted(committed) && tm.isCommitted(next);
+        assert tm.isAborted(skipped) && tm.isAborted(committed + 1);
+        long after = tm.begin();
+        assert after > next;
+        tm.commit(after);
+        assert tm.isCommitted(after);
+        tm.close();
+        assert new File(path).delete();
+    }
+
+    /**
+     * 备份在锁外复制状态窗口，期间另一个线程不停地begin、提交或回滚，窗口被反复复用：
+     * 副本中备份开始前结束的事务状态都正确
+     */
+    @Test
+    public void testBackupWhileFreezing() throws Exception {
+        String path = "/tmp/tranmger_backup_test.trxId";
+        String copy = "/tmp/tranmger_backup_test_copy.trxId";
+        new File(path).delete();
+        new File(copy).delete();
+        int window = 8192;
+        TransactionManager tm = TransactionManager.create(path, window);
+        long last = 0;
+        for (int i = 0; i < 3 * window; i++) {
+            last = tm.begin();
+            if (last % 3 == 0) {
+                tm.rollback(last);
+            } else {
+                tm.commit(last);
+            }
+        }
+        long before = last;
+        Thread writer = new Thread(() -> {
+            for (int i = 0; i < 2 * window; i++) {
+                tm.commit(tm.begin());
+            }
+        });
+        try (FileChannel out = new RandomAccessFile(copy, "rw").getChannel()) {
+            // 每次写出都很慢，复制期间writer需要冻结
+            WritableByteChannel slow = new WritableByteChannel() {
+                @Override
+                public int write(ByteBuffer src) throws IOException {
+                    if (!writer.isAlive() && writer.getState() == Thread.State.NEW) {
+                        writer.start();
+                    }
+                    try {
+                        Thread.sleep(20);
+                    } catch (InterruptedException e) {
+                        throw new IOException(e);
+                    }
+                    return out.write(src);
+                }
+
+                @Override
+                public boolean isOpen() {
+                    return out.isOpen();
+                }
+
+                @Override
+                public void close() {
+                }
+            };
+            tm.backup(slow, new RateLimiter(0));
+        }
+        writer.join();
+        assert tm.getFrozenTrxId() > before;
+        tm.close();
+
+        TransactionManager restored = TransactionManager.open(copy);
+        for (long xid = 1; xid <= before; xid++) {
+            assert restored.isCommitted(xid) == (xid % 3 != 0);
+            assert restored.isAborted(xid) == (xid % 3 == 0);
+        }
+        restored.close();
+        assert new File(path).delete();
+        assert new File(copy).delete();
+    }
+
+    /**
+     * 一个长事务不结束，状态窗口被占满时begin抛出异常而不是退出进程，长事务结束后可以继续begin
+     */
+    @Test
+    public void testWindowFull() {
+        String path = "/tmp/tranmger_window_full_test.trxId";
+        new File(path).delete();
+        TransactionManager tm = TransactionManager.create(path, 8192);
+        long longRunning = tm.begin();
+        int begun = 0;
+        try {
+            while (true) {
+                tm.commit(tm.begin());
+                begun++;
+            }
+        } catch (RuntimeException e) {
+            assert e == Errors.TrxIdWindowFullException;
+        }
+        assert begun < 8192;
+        // 超出预留区间的id不会映射到窗口中别的事务上
+        long beyond = 8192 + 1;
+        assert tm.isAborted(beyond) && !tm.isCommitted(beyond) && !tm.isActive(beyond);
+        assert tm.isCommitted(1 + 1) && !tm.isCommitted(beyond + 1);
+        tm.commit(longRunning);
+        long next = tm.begin();
+        assert tm.isActive(next);
+        tm.commit(next);
+        assert tm.isCommitted(longRunning) && tm.isCommitted(next);
+        tm.close();
+        assert new File(path).delete();
+    }
+
+    /**
+     * begin吞吐量，按线程数输出每秒begin次数
+     */
+    @Test
+    public void testBeginThroughput() throws InterruptedException {
+        String path = "/tmp/tranmger_begin_bench.trxId";
+        for (int threads : new int[]{1, 2, 4, 8, 16}) {
+            new File(path).delete();
+            TransactionManager tm = TransactionManager.create(path);
+            LongAdder begins = new LongAdder();
+            long deadline = System.nanoTime() + 200_000_000L;
+            Thread[] workers = new Thread[threads];
+            for (int i = 0; i < threads; i++) {
+                workers[i] = new Thread(() -> {
+                    while (System.nanoTime() < deadline) {
+                        tm.begin();
+                        begins.increment();
+                    }
+                });
+                workers[i].start();
+            }
+            for (Thread t : workers) {
+                t.join();
+            }
+            tm.close();
+            System.out.printf("begin throughput: threads=%d, %.0f ops/s%n", threads, begins.sum() / 0.2);
+        }
+        assert new File(path).delete();
+    }
+
+    @Test
+    public void testSnapshot() {
+        String path = "/tmp/tranmger_snapshot_test.trxId";
+        new File(path).delete();
+        TransactionManager tm = TransactionManager.create(path);
+        long t1 = tm.begin();
+        long t2 = tm.begin();
+        long t3 = tm.begin();
+        tm.commit(t2);
+
+        Snapshot s = tm.snapshot(t3);
+        assert s.getXmin() == t1;
+        assert s.getXmax() == t3 + 1;
+        assert Arrays.equals(s.getActive(), new long[]{t1, t3});
+        assert s.isRunning(t1) && !s.isRunning(t2) && s.isRunning(t3);
+        assert tm.getOldestXmin() == t1;
+
+        // 没有事务结束，快照复用
+        long t4 = tm.begin();
+        assert tm.snapshot(t4) == s;
+        assert s.isRunning(t4);
+
+        // t1结束后，t3仍持有xmin=t1的快照
+        tm.commit(t1);
+        assert tm.getOldestXmin() == t1;
+        Snapshot s4 = tm.snapshot(t4);
+        assert s4 != s && s4.getXmin() == t3 && !s4.isRunning(t1);
+        tm.commit(t3);
+        assert tm.getOldestXmin() == t3;
+        tm.commit(t4);
+        assert tm.getOldestXmin() == t4 + 1;
+        tm.close();
+        assert new File(path).delete();
+    }
+
+    /**
+     * 高并发下快照创建吞吐量：每个线程在自己的事务中反复创建快照，同时有线程不断提交事务使快照失效
+     */
+    @Test
+    public void testSnapshotThroughput() throws InterruptedException {
+        String path = "/tmp/tranmger_snapshot_bench.trxId";
+        int perThread = 200_000;
+        for (int threads : new int[]{1, 2, 4, 8, 16}) {
+            new File(path).delete();
+            TransactionManager tm = TransactionManager.create(path);
+            Thread[] workers = new Thread[threads];
+            CountDownLatch done = new CountDownLatch(threads);
+            Thread churn = new Thread(() -> {
+                while (done.getCount() > 0) {
+                    tm.commit(tm.begin());
+                }
+            });
+            churn.start();
+            long start = System.nanoTime();
+            for (int i = 0; i < threads; i++) {
+                workers[i] = new Thread(() -> {
+                    long xid = tm.begin();
+                    for (int j = 0; j < perThread; j++) {
+                        tm.snapshot(xid);
+                    }
+                    done.countDown();
+                    tm.commit(xid);
+                });
+                workers[i].start();
+            }
+            for (Thread t : workers) {
+                t.join();
+            }
+            double seconds = (System.nanoTime() - start) / 1e9;
+            churn.join();
+            tm.close();
+            System.out.printf("snapshot throughput: threads=%d, %.0f ops/s%n", threads, threads * perThread / seconds);
+        }
+        assert new File(path).delete();
+    }
+
     private void worker() {
         boolean inTrans = false;
         long transXID = 0;
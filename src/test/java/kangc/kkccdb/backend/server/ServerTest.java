@@ -0,0 +1,140 @@
+package kangc.kkccdb.backend.server;
+
+import kangc.kkccdb.client.Client;
+import kangc.kkccdb.client.LoadClient;
+import org.junit.Test;
+
+import java.io.File;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class ServerTest {
+
+    private static final long MEMORY = 16L << 20;
+
+    @Test
+    public void testRequests() throws Exception {
+        String path = "/tmp/server_test";
+        clean(path);
+        Executor executor = Executor.create(path, MEMORY);
+        Server server = new Server(0, executor, 4);
+        server.start();
+
+        try (Client client = new Client("localhost", server.getPort())) {
+            client.ping();
+            assertNull(client.get(1));
+            client.put(1, "one".getBytes());
+            assertArrayEquals("one".getBytes(), client.get(1));
+            client.put(1, "uno!".getBytes());
+            assertArrayEquals("uno!".getBytes(), client.get(1));
+
+            // 流水线：一次发出多个请求，响应按顺序返回
+            int n = 1000;
+            for (int i = 0; i < n; i++) {
+                client.sendPut(i + 100, ("v" + i).getBytes());
+                client.sendGet(i + 100);
+            }
+            client.flush();
+            for (int i = 0; i < 2 * n; i++) {
+                Client.Response r = client.receive();
+                assertEquals(i + 6, r.requestId);
+                assertEquals(Protocol.STATUS_OK, r.status);
+                if (i % 2 == 1) {
+                    assertArrayEquals(("v" + i / 2).getBytes(), r.body);
+                }
+            }
+
+            // 数据太大，返回错误，连接仍然可用
+            client.sendPut(2, new byte[10000]);
+            client.flush();
+            assertEquals(Protocol.STATUS_ERROR, client.receive().status);
+            client.ping();
+        }
+        server.close();
+        executor.close();
+
+        executor = Executor.open(path, MEMORY);
+        assertArrayEquals("v999".getBytes(), executor.get(1099));
+        executor.close();
+        clean(path);
+    }
+
+    /**
+     * 客户端只发不收：积压的响应超过阈值后服务端不再读取和执行请求，积压不会无限增长；
+     * 开始接收后服务端继续读取，所有响应按顺序到达
+     */
+    @Test
+    public void testBackpressure() throws Exception {
+        String path = "/tmp/server_backpressure_test";
+        clean(path);
+        Executor executor = Executor.create(path, MEMORY);
+        Server server = new Server(0, executor, 2);
+        server.start();
+
+        byte[] value = new byte[1000];
+        int n = 200_000;
+        try (Client client = new Client("localhost", server.getPort())) {
+            client.put(1, value);
+            Exception[] error = new Exception[1];
+            Thread sender = new Thread(() -> {
+                try {
+                    for (int i = 0; i < n; i++) {
+                        client.sendGet(1);
+                        if (i % 1000 == 999) {
+                            client.flush();
+                        }
+                    }
+                    client.flush();
+                } catch (Exception e) {
+                    error[0] = e;
+                }
+            });
+            sender.start();
+            sender.join();
+            Thread.sleep(500);
+            // 请求都在套接字缓冲区里；不暂停读取时，服务端会执行所有请求，把套接字写不下的上百MB响应攒在内存里
+            // 暂停后积压最多比阈值多一批：一次读入的请求不超过64KB，一批的响应约4MB
+            assertTrue(server.maxPendingOutput() < 16 << 20);
+
+            for (int i = 0; i < n; i++) {
+                Client.Response r = client.receive();
+                assertEquals(i + 1, r.requestId);
+                assertEquals(Protocol.STATUS_OK, r.status);
+                assertEquals(value.length, r.body.length);
+            }
+            assertNull(error[0]);
+            client.ping();
+        }
+        server.close();
+        executor.close();
+        clean(path);
+    }
+
+    /**
+     * 不同流水线深度下的吞吐量和延迟
+     */
+    @Test
+    public void testLoad() throws Exception {
+        String path = "/tmp/server_load_test";
+        clean(path);
+        Executor executor = Executor.create(path, MEMORY);
+        Server server = new Server(0, executor, 8);
+        server.start();
+        for (int pipeline : new int[]{1, 16}) {
+            LoadClient client = new LoadClient("localhost", server.getPort(), 8, pipeline, 1000, 0.9, 64);
+            System.out.println("流水线深度 " + pipeline + ": " + client.run(40000));
+        }
+        server.close();
+        executor.close();
+        clean(path);
+    }
+
+    private static void clean(String path) {
+        for (String suffix : new String[]{".trxId", ".db", ".log", ".idx"}) {
+            new File(path + suffix).delete();
+        }
+    }
+}
@@ -0,0 +1,100 @@
+package kangc.kkccdb.workload;
+
+import kangc.kkccdb.backend.manager.data.DataManagerImpl;
+import kangc.kkccdb.backend.manager.data.logger.LoggerImpl;
+import kangc.kkccdb.backend.server.Executor;
+import org.junit.Test;
+
+import java.io.File;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.SplittableRandom;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class WorkloadTest {
+
+    @Test
+    public void testHistogram() {
+        Histogram h = new Histogram();
+        Histogram other = new Histogram();
+        for (long v = 1; v <= 1_000_000; v++) {
+            (v % 2 == 0 ? h : other).record(v * 1000);
+        }
+        h.add(other);
+        assertEquals(1_000_000, h.count());
+        assertEquals(1_000_000_000L, h.max());
+        // 相对误差小于1%
+        assertClose(500_000_000L, h.percentile(50));
+        assertClose(990_000_000L, h.percentile(99));
+        assertClose(999_000_000L, h.percentile(99.9));
+        assertEquals(h.max(), h.percentile(100));
+
+        // 每个桶中最大的值都落在这个桶里
+        for (long v = 0; v < 100_000; v += 7) {
+            int i = Histogram.index(v);
+            assertTrue(Histogram.highestEquivalent(i) >= v);
+            assertEquals(i, Histogram.index(Histogram.highestEquivalent(i)));
+        }
+    }
+
+    private static void assertClose(long expected, long actual) {
+        assertTrue(expected + " ~ " + actual, Math.abs(expected - actual) <= expected / 100);
+    }
+
+    @Test
+    public void testZipfian() {
+        int n = 1000;
+        ZipfianKeyGenerator zipfian = new ZipfianKeyGenerator(n, 0.99);
+        SplittableRandom random = new SplittableRandom(1);
+        int samples = 200_000;
+        int[] ranks = new int[n];
+        for (int i = 0; i < samples; i++) {
+            ranks[(int) zipfian.nextRank(random)]++;
+        }
+        // theta=0.99时最热的1%占了超过1/3的访问
+        int top = 0;
+        for (int i = 0; i < n / 100; i++) {
+            top += ranks[i];
+        }
+        assertTrue(top > samples / 3);
+        assertTrue(ranks[0] > ranks[1] && ranks[1] > ranks[10]);
+
+        // 排名到key的映射是一一映射
+        Set<Long> keys = new HashSet<>();
+        for (int i = 0; i < 100_000; i++) {
+            long key = zipfian.next(random);
+            assertTrue(key >= 0 && key < n);
+            keys.add(key);
+        }
+        assertTrue(keys.size() > n / 2);
+    }
+
+    @Test
+    public void testRun() throws Exception {
+        String path = "/tmp/workload_test";
+        clean(path);
+        Workload workload = Workload.parse("records=5000", "operations=4000", "threads=2", "read=0.5",
+                "write=0.3", "scan=0.2", "scanLength=20", "ratio=4");
+        WorkloadDriver.Result result = new WorkloadDriver(workload).run(path);
+        System.out.print(result);
+        clean(path);
+
+        assertEquals(0, result.misses);
+        assertEquals(4000, result.operations());
+        for (WorkloadDriver.Operation op : WorkloadDriver.Operation.values()) {
+            Histogram h = result.histogram(op);
+            assertTrue(h.count() > 0);
+            assertTrue(h.percentile(50) > 0 && h.percentile(50) <= h.percentile(99.9));
+        }
+        assertTrue(result.cacheBytes * 2 < result.dataBytes);
+    }
+
+    private static void clean(String path) {
+        for (String suffix : new String[]{Executor.TRXID_SUFFIX, DataManagerImpl.DB_SUFFIX, LoggerImpl.LOG_SUFFIX,
+                Executor.INDEX_SUFFIX}) {
+            new File(path + suffix).delete();
+        }
+    }
+}